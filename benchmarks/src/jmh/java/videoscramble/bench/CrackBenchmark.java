@@ -0,0 +1,62 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cassage de clé (exhaustif et par étapes) sur une frame chiffrée avec une clé connue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CrackBenchmark {
+
+    @Param({"480p", "720p", "1080p", "2160p"})
+    public String resolution;
+
+    @Param({"1", "3"})
+    public int channels;
+
+    private Mat scrambled;
+
+    @Setup
+    public void setUp() {
+        scrambled = SyntheticFrames.createScrambled(resolution, channels);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scrambled.release();
+    }
+
+    @Benchmark
+    public int[] crackKey() {
+        return Scrambler.crackKey(scrambled);
+    }
+
+    @Benchmark
+    public int[] crackKeyStaged() {
+        return Scrambler.crackKeyStaged(scrambled);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import org.opencv.core.Mat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Vérification aller-retour de la recherche par étapes (pas un benchmark JMH) : des images de
+ * hauteurs aléatoires sont chiffrées avec des clés aléatoires, puis cassées par la force brute et
+ * par étapes. Les deux clés trouvées doivent donner la même permutation que la clé d'origine, et
+ * les classements intermédiaires de la recherche par étapes doivent être complets : valeurs de s
+ * distinctes après la passe 1 (dont une non équivalente à celle de la clé, le second choix), clés
+ * distinctes après la passe 3, toutes issues des valeurs de s retenues.
+ *
+ * <pre>gradle :benchmarks:crackRoundTrip [--args="20 1234"]</pre>
+ */
+public final class CrackRoundTrip {
+
+    private static final int DEFAULT_RUNS = 20;
+    private static final int MIN_HEIGHT = 240;
+    private static final int MAX_HEIGHT = 2160;
+    // Tailles des classements de StagedKeySearch (TOP_STEPS, TOP_KEYS)
+    private static final int TOP_STEPS = 8;
+    private static final int TOP_KEYS = 32;
+
+    private CrackRoundTrip() {
+    }
+
+    /**
+     * @param args Nombre d'essais (défaut : 20) et graine (défaut : aléatoire).
+     */
+    public static void main(String[] args) {
+        int runs = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+        Random random = new Random(seed);
+        System.out.println("Seed " + seed);
+
+        int passed = 0;
+        for (int run = 0; run < runs; run++) {
+            int height = MIN_HEIGHT + random.nextInt(MAX_HEIGHT - MIN_HEIGHT + 1);
+            int width = height * 16 / 9;
+            int channels = random.nextBoolean() ? 3 : 1;
+            int r = random.nextInt(256);
+            int s = random.nextInt(128);
+
+            Mat clear = SyntheticFrames.create(width, height, channels, random.nextLong());
+            Mat scrambled = Scrambler.processImage(clear, r, s, false);
+            clear.release();
+
+            int[] expected = Scrambler.getPermutationMap(height, r, s);
+            int[] exhaustive = Scrambler.crackKey(scrambled);
+            int[] staged = Scrambler.crackKeyStaged(scrambled);
+            int[][] candidates = Scrambler.crackKeyStagedCandidates(scrambled);
+            scrambled.release();
+
+            boolean exhaustiveOk = Arrays.equals(expected, Scrambler.getPermutationMap(height, exhaustive[0], exhaustive[1]));
+            boolean stagedOk = Arrays.equals(expected, Scrambler.getPermutationMap(height, staged[0], staged[1]));
+            String rankingError = checkRanking(height, staged, candidates);
+            if (exhaustiveOk && stagedOk && rankingError == null) passed++;
+            System.out.println(String.format("%dx%d, %d channel(s), key %d,%d: exhaustive %s, staged %s, ranking %s",
+                    width, height, channels, r, s, exhaustiveOk ? "ok" : "FAILED", stagedOk ? "ok" : "FAILED",
+                    rankingError == null ? "ok" : "FAILED (" + rankingError + ")"));
+        }
+
+        System.out.println(passed + "/" + runs + " runs recovered the key");
+        if (passed != runs) System.exit(1);
+    }
+
+    /**
+     * Vérifie les classements intermédiaires de la recherche par étapes.
+     *
+     * @param staged Clé rendue par la recherche.
+     * @param candidates [0] : valeurs de s de la passe 1 ; [1..] : clés {r, s} de la passe 3.
+     * @return null si les classements sont complets, sinon la première anomalie.
+     */
+    private static String checkRanking(int height, int[] staged, int[][] candidates) {
+        int[] steps = candidates[0];
+        if (steps.length != TOP_STEPS) return steps.length + " steps kept";
+        if (Arrays.stream(steps).distinct().count() != steps.length) return "duplicate steps " + Arrays.toString(steps);
+
+        int keyCount = candidates.length - 1;
+        if (keyCount != TOP_KEYS) return keyCount + " keys kept";
+        long distinctKeys = Arrays.stream(candidates, 1, candidates.length).map(Arrays::toString).distinct().count();
+        if (distinctKeys != keyCount) return "duplicate keys";
+        for (int k = 1; k < candidates.length; k++) {
+            int keyStep = candidates[k][1];
+            if (Arrays.stream(steps).noneMatch(step -> step == keyStep)) return "key outside the kept steps";
+        }
+        if (candidates[1][0] != staged[0] || candidates[1][1] != staged[1]) return "best key differs from the search";
+
+        // Second choix : une valeur de s ni décalée ni symétrique de celle de la clé
+        int half = Integer.highestOneBit(Math.max(height, 2)) / 2;
+        boolean runnerUp = Arrays.stream(steps).anyMatch(step ->
+                (step - staged[1]) % half != 0 && ((long) step + staged[1] + 1) % half != 0);
+        return runnerUp ? null : "no runner-up step";
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion d'une frame OpenCV en Image JavaFX pour l'affichage (mat2Image).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DisplayBenchmark {
+
+    @Param({"480p", "720p", "1080p", "2160p"})
+    public String resolution;
+
+    @Param({"1", "3"})
+    public int channels;
+
+    private Mat frame;
+
+    @Setup
+    public void setUp() {
+        // Les images JavaFX exigent un toolkit démarré
+        try {
+            Platform.startup(() -> { });
+        } catch (IllegalStateException alreadyStarted) {
+            // Déjà démarré par une itération précédente
+        }
+        frame = SyntheticFrames.create(resolution, channels);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+    }
+
+    @Benchmark
+    public Image mat2Image() {
+        return Scrambler.mat2Image(frame);
+    }
+}
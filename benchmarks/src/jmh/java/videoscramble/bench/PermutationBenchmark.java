@@ -0,0 +1,39 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Génération de la carte de permutation des lignes (getPermutationMap).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+
+    @Param({"480", "720", "1080", "2160"})
+    public int height;
+
+    @Benchmark
+    public int[] getPermutationMap() {
+        return Scrambler.getPermutationMap(height, SyntheticFrames.KEY_R, SyntheticFrames.KEY_S);
+    }
+}
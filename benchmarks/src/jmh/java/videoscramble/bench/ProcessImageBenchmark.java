@@ -0,0 +1,76 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chiffrement et déchiffrement d'une frame complète (processImage), destination réutilisée.
+ * {@code rowSplit} compare le découpage automatique des grandes frames sur plusieurs cœurs
+ * au chemin mono-thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessImageBenchmark {
+
+    @Param({"480p", "720p", "1080p", "2160p"})
+    public String resolution;
+
+    @Param({"1", "3"})
+    public int channels;
+
+    @Param({"auto", "off"})
+    public String rowSplit;
+
+    private Mat clear;
+    private Mat scrambled;
+    private Mat dst;
+
+    @Setup
+    public void setUp() {
+        clear = SyntheticFrames.create(resolution, channels);
+        scrambled = SyntheticFrames.createScrambled(resolution, channels);
+        dst = new Mat();
+        Scrambler.setRowSplitThreshold(rowSplit.equals("auto") ? 8L * 1024 * 1024 : Long.MAX_VALUE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clear.release();
+        scrambled.release();
+        dst.release();
+    }
+
+    @Benchmark
+    public Mat scramble() {
+        Scrambler.processImage(clear, dst, SyntheticFrames.KEY_R, SyntheticFrames.KEY_S, false);
+        return dst;
+    }
+
+    @Benchmark
+    public Mat unscramble() {
+        Scrambler.processImage(scrambled, dst, SyntheticFrames.KEY_R, SyntheticFrames.KEY_S, true);
+        return dst;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import javafx.scene.image.Image;
+import org.opencv.core.Mat;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Accès aux méthodes de l'application depuis les benchmarks.
+ * JMH refuse les benchmarks du paquetage par défaut, et une classe d'un paquetage nommé ne peut pas
+ * importer les classes de l'application (paquetage par défaut) : on passe donc par des MethodHandle
+ * statiques et finaux, que le JIT inline comme un appel direct.
+ */
+final class Scrambler {
+
+    private static final MethodHandle GET_PERMUTATION_MAP = find("VideoScrambler", "getPermutationMap",
+            MethodType.methodType(int[].class, int.class, int.class, int.class));
+    private static final MethodHandle PROCESS_IMAGE_INTO = find("VideoScrambler", "processImage",
+            MethodType.methodType(void.class, Mat.class, Mat.class, int.class, int.class, boolean.class));
+    private static final MethodHandle PROCESS_IMAGE = find("VideoScrambler", "processImage",
+            MethodType.methodType(Mat.class, Mat.class, int.class, int.class, boolean.class));
+    private static final MethodHandle SET_ROW_SPLIT_THRESHOLD = find("ParallelRowPermuter", "setThreshold",
+            MethodType.methodType(void.class, long.class));
+    private static final MethodHandle EMBED_KEY = find("VideoScrambler", "embedKey",
+            MethodType.methodType(Mat.class, Mat.class, int.class, int.class));
+    private static final MethodHandle EXTRACT_KEY = find("VideoScrambler", "extractKey",
+            MethodType.methodType(int[].class, Mat.class));
+    private static final MethodHandle CRACK_KEY = find("VideoScrambler", "crackKey",
+            MethodType.methodType(int[].class, Mat.class));
+    private static final MethodHandle CRACK_KEY_STAGED = find("VideoScrambler", "crackKeyStaged",
+            MethodType.methodType(int[].class, Mat.class));
+    private static final MethodHandle CRACK_KEY_STAGED_CANDIDATES = find("VideoScrambler",
+            "crackKeyStagedCandidates", MethodType.methodType(int[][].class, Mat.class));
+    private static final MethodHandle MAT_TO_IMAGE = find("VideoScramblerController", "mat2Image",
+            MethodType.methodType(Image.class, Mat.class));
+
+    private Scrambler() {
+    }
+
+    private static MethodHandle find(String className, String name, MethodType type) {
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName(className), name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new IllegalStateException(t);
+    }
+
+    static int[] getPermutationMap(int height, int r, int s) {
+        try {
+            return (int[]) GET_PERMUTATION_MAP.invokeExact(height, r, s);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void processImage(Mat src, Mat dst, int r, int s, boolean unscrambleMode) {
+        try {
+            PROCESS_IMAGE_INTO.invokeExact(src, dst, r, s, unscrambleMode);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Mat processImage(Mat src, int r, int s, boolean unscrambleMode) {
+        try {
+            return (Mat) PROCESS_IMAGE.invokeExact(src, r, s, unscrambleMode);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void setRowSplitThreshold(long frameBytes) {
+        try {
+            SET_ROW_SPLIT_THRESHOLD.invokeExact(frameBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Mat embedKey(Mat src, int r, int s) {
+        try {
+            return (Mat) EMBED_KEY.invokeExact(src, r, s);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int[] extractKey(Mat src) {
+        try {
+            return (int[]) EXTRACT_KEY.invokeExact(src);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int[] crackKey(Mat scrambledImage) {
+        try {
+            return (int[]) CRACK_KEY.invokeExact(scrambledImage);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int[] crackKeyStaged(Mat scrambledImage) {
+        try {
+            return (int[]) CRACK_KEY_STAGED.invokeExact(scrambledImage);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int[][] crackKeyStagedCandidates(Mat scrambledImage) {
+        try {
+            return (int[][]) CRACK_KEY_STAGED_CANDIDATES.invokeExact(scrambledImage);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Image mat2Image(Mat frame) {
+        try {
+            return (Image) MAT_TO_IMAGE.invokeExact(frame);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stéganographie de la clé dans le pixel (0,0). Uniquement en 3 canaux : la clé occupe B, G et R.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StegoBenchmark {
+
+    @Param({"480p", "720p", "1080p", "2160p"})
+    public String resolution;
+
+    private Mat frame;
+    private Mat withKey;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrames.createScrambled(resolution, 3);
+        withKey = Scrambler.embedKey(frame, SyntheticFrames.KEY_R, SyntheticFrames.KEY_S);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        withKey.release();
+    }
+
+    @Benchmark
+    public Mat embedKey() {
+        Mat result = Scrambler.embedKey(frame, SyntheticFrames.KEY_R, SyntheticFrames.KEY_S);
+        result.release();
+        return result;
+    }
+
+    @Benchmark
+    public int[] extractKey() {
+        return Scrambler.extractKey(withKey);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+package videoscramble.bench;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Random;
+
+/**
+ * Génération d'images de test déterministes (aucune caméra ni vidéo d'exemple nécessaire).
+ * Le motif est lisse verticalement, comme une vraie image, pour que la cryptanalyse ait un sens.
+ */
+final class SyntheticFrames {
+
+    // Clé utilisée pour préparer les images chiffrées des benchmarks
+    static final int KEY_R = 173;
+    static final int KEY_S = 91;
+
+    static {
+        loadOpenCv();
+    }
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * Charge la bibliothèque native OpenCV : depuis java.library.path si elle y est,
+     * sinon depuis l'archive org.openpnp:opencv utilisée par défaut par le build.
+     */
+    private static void loadOpenCv() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            try {
+                Class.forName("nu.pattern.OpenCV").getMethod("loadLocally").invoke(null);
+            } catch (ReflectiveOperationException notBundled) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param resolution Nom de la résolution (480p, 720p, 1080p ou 2160p).
+     * @return {largeur, hauteur}.
+     */
+    static int[] dimensions(String resolution) {
+        switch (resolution) {
+            case "480p":  return new int[]{640, 480};
+            case "720p":  return new int[]{1280, 720};
+            case "1080p": return new int[]{1920, 1080};
+            case "2160p": return new int[]{3840, 2160};
+            default: throw new IllegalArgumentException("Unknown resolution: " + resolution);
+        }
+    }
+
+    /**
+     * Crée une image 8 bits déterministe.
+     *
+     * @param resolution Nom de la résolution.
+     * @param channels Nombre de canaux (1 ou 3).
+     * @return Une nouvelle Mat.
+     */
+    static Mat create(String resolution, int channels) {
+        int[] size = dimensions(resolution);
+        return create(size[0], size[1], channels, 42L * size[0] + channels);
+    }
+
+    /**
+     * Crée une image 8 bits déterministe de taille quelconque.
+     *
+     * @param width Largeur.
+     * @param height Hauteur.
+     * @param channels Nombre de canaux (1 ou 3).
+     * @param seed Graine du motif et du bruit.
+     * @return Une nouvelle Mat.
+     */
+    static Mat create(int width, int height, int channels, long seed) {
+        Random random = new Random(seed);
+        double[] phases = new double[channels];
+        for (int c = 0; c < channels; c++) phases[c] = random.nextDouble() * Math.PI;
+
+        byte[] data = new byte[width * height * channels];
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            double vertical = Math.cos(y * 6.0 / height);
+            for (int x = 0; x < width; x++) {
+                for (int c = 0; c < channels; c++) {
+                    double v = 128
+                            + 70 * Math.sin(x * 9.0 / width + phases[c]) * vertical
+                            + 30 * Math.sin((x + 2.0 * y) * 20.0 / width)
+                            + random.nextInt(9) - 4;
+                    data[index++] = (byte) Math.max(0, Math.min(255, (int) v));
+                }
+            }
+        }
+
+        Mat frame = new Mat(height, width, CvType.makeType(CvType.CV_8U, channels));
+        frame.put(0, 0, data);
+        return frame;
+    }
+
+    /**
+     * Crée la version chiffrée (clé {@link #KEY_R}, {@link #KEY_S}) de l'image déterministe.
+     */
+    static Mat createScrambled(String resolution, int channels) {
+        Mat clear = create(resolution, channels);
+        Mat scrambled = Scrambler.processImage(clear, KEY_R, KEY_S, false);
+        clear.release();
+        return scrambled;
+    }
+}
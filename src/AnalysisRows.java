@@ -0,0 +1,133 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Lignes d'analyse d'une image : image réduite en largeur, en niveaux de gris, chaque ligne
+ * centrée (moyenne nulle) avec l'inverse de sa norme. La corrélation de Pearson de deux lignes
+ * se réduit alors à un produit scalaire.
+ */
+public class AnalysisRows {
+
+    private final float[][] rows;
+    private final float[] invNorms;
+
+    /**
+     * @param rows Lignes centrées (moyenne nulle).
+     * @param invNorms Inverse de la norme de chaque ligne (0 pour une ligne uniforme).
+     */
+    public AnalysisRows(float[][] rows, float[] invNorms) {
+        this.rows = rows;
+        this.invNorms = invNorms;
+    }
+
+    /**
+     * Prépare les lignes d'analyse d'une image.
+     *
+     * @param image Image à analyser (1 ou 3 canaux).
+     * @param analysisWidth Largeur de travail.
+     * @return Les lignes centrées et leurs normes inverses.
+     */
+    public static AnalysisRows fromImage(Mat image, int analysisWidth) {
+        Mat analysisMat = new Mat();
+        Imgproc.resize(image, analysisMat, new Size(analysisWidth, image.height()));
+
+        if (analysisMat.channels() > 1) {
+            Imgproc.cvtColor(analysisMat, analysisMat, Imgproc.COLOR_BGR2GRAY);
+        }
+        analysisMat.convertTo(analysisMat, CvType.CV_32F);
+
+        int h = analysisMat.rows();
+        int w = analysisMat.cols();
+
+        // Une seule copie native de l'image d'analyse, découpée ensuite en lignes
+        float[] pixels = new float[h * w];
+        analysisMat.get(0, 0, pixels);
+        // Libération immédiate de la mémoire native temporaire (sans attendre le GC)
+        analysisMat.release();
+        return fromPixels(pixels, w, h);
+    }
+
+    /**
+     * Prépare les lignes d'analyse à partir de lignes 8 bits déjà réduites (sans OpenCV).
+     *
+     * @param grey Lignes en niveaux de gris.
+     * @return Les lignes centrées et leurs normes inverses.
+     */
+    public static AnalysisRows fromGrey(GreyRows grey) {
+        byte[] bytes = grey.pixels();
+        float[] pixels = new float[bytes.length];
+        for (int i = 0; i < bytes.length; i++) pixels[i] = bytes[i] & 0xFF;
+        return fromPixels(pixels, grey.width(), grey.height());
+    }
+
+    private static AnalysisRows fromPixels(float[] pixels, int w, int h) {
+        // Pré-calculs statistiques (centrage et norme inverse) pour accélérer Pearson
+        RowKernels kernels = RowKernels.INSTANCE;
+        float[][] rowData = new float[h][w];
+        float[] rowInvNorms = new float[h];
+
+        for (int i = 0; i < h; i++) {
+            System.arraycopy(pixels, i * w, rowData[i], 0, w);
+
+            float mean = kernels.sum(rowData[i]) / w;
+            float sumSqDiff = kernels.centerAndSquare(rowData[i], mean);
+            rowInvNorms[i] = (sumSqDiff > 1e-6f) ? (float) (1.0 / Math.sqrt(sumSqDiff)) : 0f;
+        }
+
+        return new AnalysisRows(rowData, rowInvNorms);
+    }
+
+    /**
+     * @return Nombre de lignes.
+     */
+    public int height() {
+        return rows.length;
+    }
+
+    /**
+     * @return La ligne centrée d'indice i (ne pas modifier).
+     */
+    public float[] row(int i) {
+        return rows[i];
+    }
+
+    /**
+     * @return L'inverse de la norme de la ligne i.
+     */
+    public float invNorm(int i) {
+        return invNorms[i];
+    }
+
+    /**
+     * Corrélation de Pearson entre les lignes a et b.
+     */
+    public float correlation(int a, int b) {
+        return RowKernels.INSTANCE.dot(rows[a], rows[b]) * invNorms[a] * invNorms[b];
+    }
+
+    /**
+     * Score de plausibilité d'une clé : corrélation moyenne entre lignes adjacentes de l'image
+     * reconstruite (même critère que la force brute, ramené à une paire). Coût : h produits scalaires.
+     *
+     * @param map Carte de permutation de la clé testée.
+     * @return La corrélation moyenne des paires adjacentes (entre -1 et 1).
+     */
+    public double adjacentScore(int[] map) {
+        int h = rows.length;
+        if (h < 2) return 0;
+
+        double totalCorrelation = 0;
+        for (int i = 0; i < h - 1; i++) {
+            totalCorrelation += correlation(map[i], map[i + 1]);
+        }
+        return totalCorrelation / (h - 1);
+    }
+}
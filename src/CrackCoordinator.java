@@ -0,0 +1,497 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coordinateur de la recherche de clé répartie sur plusieurs processus ({@link CrackWorker}),
+ * joints par une socket TCP ou Unix locale ({@link CrackProtocol}).
+ *
+ * L'espace des clés ({@link KeySpace}, réduit aux clés distinctes pour la hauteur de l'image) est
+ * découpé en tranches de quelques valeurs de s. Chaque worker reçoit une fois la matrice de
+ * similarité de l'image, puis une tranche à la fois ; les meilleures clés des tranches sont
+ * combinées au fil de l'eau ({@link KeySearchResult#merge}). Un worker qui disparaît (processus
+ * arrêté, connexion fermée) rend sa tranche en cours, reprise en priorité par un autre worker.
+ * Des workers peuvent rejoindre une recherche en cours.
+ *
+ * Usage :
+ *   java CrackCoordinator --input scrambled.y4m|scrambled.avi|frame.png [--frame N]
+ *                         [--listen tcp:[host:]port|unix:path] [--spawn N] [--worker-threads T]
+ *                         [--key-space 256x128] [--shard-size S] [--metric pearson|sad|ssd|gradient]
+ */
+public class CrackCoordinator implements AutoCloseable {
+
+    private static final String DEFAULT_ADDRESS = "tcp:127.0.0.1:7071";
+    // Valeurs de s par tranche
+    private static final int DEFAULT_SHARD_STEPS = 4;
+    // Attente entre deux vérifications (annulation, tranches disponibles)
+    private static final long POLL_MILLIS = 100;
+    // Délai laissé aux workers lancés localement pour s'arrêter d'eux-mêmes
+    private static final long WORKER_EXIT_MILLIS = 2000;
+
+    private final String addressText;
+    private final SocketAddress address;
+    private final int shardSteps;
+
+    private final Set<WorkerLink> workers = ConcurrentHashMap.newKeySet();
+    private final List<Process> spawned = new ArrayList<>();
+    private final AtomicInteger nextWorkerId = new AtomicInteger(1);
+    private final AtomicInteger nextJobId = new AtomicInteger(1);
+
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+    private volatile boolean running = false;
+    // Recherche en cours (une seule à la fois), null entre deux recherches
+    private Job currentJob;
+
+    /**
+     * @param address Adresse d'écoute ({@link ScrambleProtocol#parseAddress}), transmise telle quelle
+     *                aux workers lancés par {@link #spawnLocalWorkers}.
+     * @param shardSteps Nombre de valeurs de s par tranche.
+     */
+    public CrackCoordinator(String address, int shardSteps) {
+        this.addressText = address;
+        this.address = ScrambleProtocol.parseAddress(address);
+        this.shardSteps = Math.max(1, shardSteps);
+    }
+
+    /**
+     * Point d'entrée du coordinateur : casse la clé d'une frame avec des workers locaux ou déjà lancés.
+     *
+     * @param args Arguments de la ligne de commande.
+     */
+    public static void main(String[] args) {
+        String input = null;
+        long frameIndex = 0;
+        String listen = DEFAULT_ADDRESS;
+        int spawn = 0;
+        int workerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        KeySpace keySpace = KeySpace.DEFAULT;
+        int shardSteps = DEFAULT_SHARD_STEPS;
+        VideoScrambler.ScoringMetric metric = VideoScrambler.ScoringMetric.PEARSON;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+                String value = args[++i];
+                try {
+                    switch (arg) {
+                        case "--input": input = value; break;
+                        case "--frame": frameIndex = Long.parseLong(value); break;
+                        case "--listen": listen = value; break;
+                        case "--spawn": spawn = Integer.parseInt(value); break;
+                        case "--worker-threads": workerThreads = Integer.parseInt(value); break;
+                        case "--key-space": keySpace = KeySpace.parse(value); break;
+                        case "--shard-size": shardSteps = Integer.parseInt(value); break;
+                        case "--metric":
+                            try {
+                                metric = VideoScrambler.ScoringMetric.valueOf(value.toUpperCase(Locale.ROOT));
+                            } catch (IllegalArgumentException e) {
+                                throw new IllegalArgumentException("Unknown scoring metric: " + value);
+                            }
+                            break;
+                        default: throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number for " + arg + ": " + value);
+                }
+            }
+            if (input == null) throw new IllegalArgumentException("Missing --input");
+            ScrambleProtocol.parseAddress(listen);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java CrackCoordinator --input <file> [--frame N] [--listen tcp:[host:]port|unix:path]");
+            System.err.println("                             [--spawn N] [--worker-threads T] [--key-space RxS]");
+            System.err.println("                             [--shard-size S] [--metric pearson|sad|ssd|gradient]");
+            System.exit(2);
+            return;
+        }
+
+        RowSimilarity similarity;
+        try {
+            similarity = loadSimilarity(input, frameIndex, metric);
+        } catch (IOException e) {
+            System.err.println("Could not read " + input + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        KeySpace effective = keySpace.effectiveFor(similarity.size());
+        if (!effective.equals(keySpace)) {
+            System.out.println("Key space " + keySpace + " reduced to " + effective + " distinct keys for "
+                    + similarity.size() + " rows");
+        }
+
+        boolean found = false;
+        try (CrackCoordinator coordinator = new CrackCoordinator(listen, shardSteps)) {
+            coordinator.start();
+            System.out.println("Crack coordinator listening on " + listen);
+            if (spawn > 0) coordinator.spawnLocalWorkers(spawn, workerThreads);
+
+            long start = System.nanoTime();
+            KeySearchResult result = coordinator.search(similarity, keySpace, CrackMonitor.NONE);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println("Clé trouvée (recherche répartie) : " + result);
+            System.out.println(String.format("%d keys in %.2f s (%.0f keys/s)",
+                    effective.size(), seconds, effective.size() / seconds));
+            found = true;
+        } catch (IOException e) {
+            System.err.println("Distributed crack failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(found ? 0 : 1);
+    }
+
+    /**
+     * Matrice de similarité d'une frame : plan de luminance lu directement pour un fichier Y4M,
+     * sinon image ou vidéo lue par OpenCV.
+     *
+     * @param input Fichier à analyser.
+     * @param frameIndex Numéro de la frame (0 pour une image).
+     * @param metric Métrique de score des paires de lignes.
+     * @return La matrice de similarité des lignes de la frame.
+     */
+    static RowSimilarity loadSimilarity(String input, long frameIndex, VideoScrambler.ScoringMetric metric)
+            throws IOException {
+        if (input.toLowerCase(Locale.ROOT).endsWith(".y4m")) {
+            try (Y4mReader reader = new Y4mReader(Paths.get(input))) {
+                ByteBuffer frame = null;
+                for (long i = 0; i <= frameIndex; i++) {
+                    frame = reader.nextFrame();
+                    if (frame == null) throw new IOException("No frame " + frameIndex);
+                }
+                GreyRows rows = GreyRows.fromLuma(frame, reader.getWidth(), reader.getHeight(),
+                        VideoScrambler.ANALYSIS_WIDTH);
+                return RowSimilarity.fromRows(rows, metric);
+            }
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        VideoCapture capture = new VideoCapture(input);
+        Mat frame = new Mat();
+        try {
+            if (!capture.isOpened()) throw new IOException("Unsupported or missing file");
+            for (long i = 0; i <= frameIndex; i++) {
+                if (!capture.read(frame)) throw new IOException("No frame " + frameIndex);
+            }
+            return RowSimilarity.fromImage(frame, VideoScrambler.ANALYSIS_WIDTH, metric);
+        } finally {
+            frame.release();
+            capture.release();
+        }
+    }
+
+    /**
+     * Ouvre la socket d'écoute et accepte les workers.
+     */
+    public void start() throws IOException {
+        if (running) return;
+        if (address instanceof UnixDomainSocketAddress) {
+            // Fichier de socket laissé par une exécution précédente
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+        serverChannel = ServerSocketChannel.open(ScrambleProtocol.familyOf(address));
+        serverChannel.bind(address);
+
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "crack-coordinator-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Lance des workers dans des JVM séparées sur cette machine (même JVM et même classpath que
+     * le coordinateur). Ils s'arrêtent à la fermeture du coordinateur.
+     *
+     * @param count Nombre de workers.
+     * @param threadsPerWorker Nombre de threads de recherche de chaque worker.
+     */
+    public void spawnLocalWorkers(int count, int threadsPerWorker) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        for (int i = 0; i < count; i++) {
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath, "CrackWorker",
+                    "--connect", addressText, "--threads", String.valueOf(threadsPerWorker));
+            builder.inheritIO();
+            synchronized (spawned) {
+                spawned.add(builder.start());
+            }
+        }
+    }
+
+    /**
+     * @return Nombre de workers connectés.
+     */
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Recherche exhaustive répartie sur les workers connectés (ou à venir).
+     * Même résultat qu'une recherche locale ({@link VideoScrambler#searchKey(RowSimilarity, KeySpace, CrackMonitor)}).
+     *
+     * @param similarity Matrice de similarité de l'image chiffrée.
+     * @param keySpace Espace des clés à explorer.
+     * @param monitor Annulation et progression (une unité par tranche).
+     * @return La meilleure clé et sa concurrente.
+     * @throws java.util.concurrent.CancellationException si le moniteur annule la recherche.
+     */
+    public KeySearchResult search(RowSimilarity similarity, KeySpace keySpace, CrackMonitor monitor)
+            throws InterruptedException {
+        if (!running) throw new IllegalStateException("Coordinator not started");
+        int h = similarity.size();
+        KeySpace effective = keySpace.effectiveFor(h);
+        int jobId = nextJobId.getAndIncrement();
+        Job job = new Job(jobId, CrackProtocol.encodeJob(jobId, similarity, effective.rMax()),
+                effective, shardSteps, h, monitor);
+
+        synchronized (this) {
+            if (currentJob != null) throw new IllegalStateException("A distributed search is already running");
+            currentJob = job;
+            notifyAll();
+        }
+        try {
+            boolean warned = false;
+            while (!job.await(POLL_MILLIS)) {
+                monitor.checkCancelled();
+                if (!running) throw new IllegalStateException("Coordinator closed during the search");
+                if (workers.isEmpty() && !warned) {
+                    System.out.println("Waiting for crack workers on " + addressText + "...");
+                    warned = true;
+                }
+            }
+        } finally {
+            job.cancel();
+            synchronized (this) {
+                currentJob = null;
+            }
+        }
+        return job.result();
+    }
+
+    /**
+     * Ferme la socket d'écoute et les connexions ; les workers s'arrêtent en voyant la connexion fermée.
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Déjà fermée
+        }
+        for (WorkerLink worker : workers) {
+            worker.closeChannel();
+        }
+
+        synchronized (spawned) {
+            for (Process process : spawned) {
+                try {
+                    if (!process.waitFor(WORKER_EXIT_MILLIS, TimeUnit.MILLISECONDS)) process.destroy();
+                } catch (InterruptedException e) {
+                    process.destroy();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            spawned.clear();
+        }
+
+        if (address instanceof UnixDomainSocketAddress) {
+            try {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            } catch (IOException e) {
+                // Rien à nettoyer
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                WorkerLink worker = new WorkerLink(channel, nextWorkerId.getAndIncrement());
+                workers.add(worker);
+                Thread thread = new Thread(worker, "crack-worker-link-" + worker.id);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Attend une recherche à distribuer.
+     *
+     * @return La recherche en cours, ou null si le coordinateur est fermé.
+     */
+    private synchronized Job awaitJob() throws InterruptedException {
+        while (running && (currentJob == null || currentJob.isFinished())) {
+            wait();
+        }
+        return running ? currentJob : null;
+    }
+
+    /**
+     * Une recherche répartie : tranches à distribuer et résultat combiné.
+     */
+    private static final class Job {
+        final int id;
+        // Message de la recherche, envoyé une fois à chaque worker (duplicate)
+        final ByteBuffer message;
+        final int rMax;
+        final int rows;
+        final CrackMonitor monitor;
+        final BlockingDeque<CrackProtocol.Shard> pending = new LinkedBlockingDeque<>();
+        final CountDownLatch remaining;
+
+        private KeySearchResult result;
+        private volatile boolean cancelled = false;
+
+        Job(int id, ByteBuffer message, KeySpace effective, int shardSteps, int rows, CrackMonitor monitor) {
+            this.id = id;
+            this.message = message;
+            this.rMax = effective.rMax();
+            this.rows = rows;
+            this.monitor = monitor;
+            for (int s = 0; s < effective.sMax(); s += shardSteps) {
+                pending.add(new CrackProtocol.Shard(s, Math.min(effective.sMax(), s + shardSteps)));
+            }
+            remaining = new CountDownLatch(pending.size());
+            monitor.begin(pending.size());
+        }
+
+        /**
+         * Combine le résultat d'une tranche (appelé depuis les threads des workers).
+         */
+        synchronized void complete(CrackProtocol.Shard shard, KeySearchResult shardResult) {
+            result = (result == null) ? shardResult : result.merge(shardResult, rows);
+            monitor.keysEvaluated((long) rMax * (shard.sTo - shard.sFrom));
+            monitor.unitDone(result.r, result.s, result.score / Math.max(1, rows - 1));
+            remaining.countDown();
+        }
+
+        /**
+         * Rend une tranche dont le worker a disparu : elle sera la prochaine distribuée.
+         */
+        void requeue(CrackProtocol.Shard shard) {
+            if (!isFinished()) pending.addFirst(shard);
+        }
+
+        boolean await(long millis) throws InterruptedException {
+            return remaining.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        boolean isFinished() {
+            return cancelled || remaining.getCount() == 0;
+        }
+
+        void cancel() {
+            cancelled = true;
+            pending.clear();
+        }
+
+        synchronized KeySearchResult result() {
+            return result;
+        }
+    }
+
+    /**
+     * Connexion à un worker : envoie la recherche en cours puis une tranche à la fois.
+     */
+    private final class WorkerLink implements Runnable {
+        final SocketChannel channel;
+        final int id;
+
+        WorkerLink(SocketChannel channel, int id) {
+            this.channel = channel;
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            Job job = null;
+            CrackProtocol.Shard shard = null;
+            int sentJob = -1;
+            int shardsDone = 0;
+            try {
+                int threads = CrackProtocol.readHello(channel);
+                if (threads < 0) {
+                    System.err.println("Connection #" + id + " is not a crack worker, closed");
+                    return;
+                }
+                System.out.println("Crack worker #" + id + " connected (" + threads + " threads)");
+
+                while (running) {
+                    job = awaitJob();
+                    if (job == null) return;
+                    if (job.id != sentJob) {
+                        ScrambleProtocol.writeFully(channel, job.message.duplicate());
+                        sentJob = job.id;
+                    }
+                    shard = job.pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (shard == null) continue;
+
+                    CrackProtocol.writeShard(channel, job.id, shard);
+                    KeySearchResult result = CrackProtocol.readResult(channel, job.id, shard);
+                    job.complete(shard, result);
+                    shard = null;
+                    shardsDone++;
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Crack worker #" + id + " lost after " + shardsDone + " shards: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                workers.remove(this);
+                if (shard != null && job != null) {
+                    job.requeue(shard);
+                    if (running) System.err.println("Shard " + shard + " of crack worker #" + id + " reassigned");
+                }
+                closeChannel();
+            }
+        }
+
+        void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Déjà fermée
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recherche de clé lancée par un {@link CrackService}.
+ * Le travail vérifie le jeton d'annulation entre deux unités et publie sa progression
+ * ainsi que la meilleure clé trouvée jusqu'ici.
+ */
+public class CrackJob implements CrackMonitor {
+
+    /**
+     * Notifié (depuis les threads de recherche) à chaque unité de travail terminée.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(CrackJob job);
+    }
+
+    private final List<Mat> frames;
+    private final VideoScrambler.CrackMethod method;
+    private final VideoScrambler.ScoringMetric metric;
+    private final KeySpace keySpace;
+    private final ProgressListener listener;
+    private final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+    private volatile boolean cancelled = false;
+    private volatile int totalUnits = 1;
+    private final AtomicInteger doneUnits = new AtomicInteger();
+    // Débit : clés évaluées et durée de la recherche (0 tant qu'elle n'a pas commencé)
+    private final AtomicLong keysEvaluated = new AtomicLong();
+    private volatile long startNanos = 0;
+    private volatile long elapsedNanos = 0;
+
+    // Meilleure clé publiée par les unités terminées
+    private int bestR = -1;
+    private int bestS = -1;
+    private double bestScore = -Double.MAX_VALUE;
+    // Écart avec la clé concurrente (recherche sur plusieurs frames seulement)
+    private volatile double margin = Double.NaN;
+
+    /**
+     * @param frames Frames chiffrées avec la même clé (appartiennent au travail, libérées à la fin).
+     *               Avec plusieurs frames, la recherche porte sur leurs corrélations cumulées.
+     * @param method Méthode de cassage (une seule frame).
+     * @param metric Métrique de score des lignes (une seule frame ; Pearson pour plusieurs frames).
+     * @param keySpace Espace des clés à explorer.
+     * @param listener Notifié de la progression, ou null.
+     */
+    CrackJob(List<Mat> frames, VideoScrambler.CrackMethod method, VideoScrambler.ScoringMetric metric,
+             KeySpace keySpace, ProgressListener listener) {
+        this.frames = frames;
+        this.method = method;
+        this.metric = metric;
+        this.keySpace = keySpace;
+        this.listener = listener;
+    }
+
+    /**
+     * Exécute la recherche (appelé par le {@link CrackService}).
+     */
+    void run() {
+        startNanos = System.nanoTime();
+        try {
+            checkCancelled();
+            int[] key;
+            if (frames.size() == 1) {
+                key = VideoScrambler.crackKey(frames.get(0), method, metric, keySpace, this);
+            } else {
+                KeySearchResult searchResult = VideoScrambler.crackKey(frames, this);
+                margin = searchResult.margin();
+                key = searchResult.key();
+            }
+            synchronized (this) {
+                bestR = key[0];
+                bestS = key[1];
+            }
+            doneUnits.set(totalUnits);
+            result.complete(key);
+        } catch (CancellationException e) {
+            result.cancel(false);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        } finally {
+            elapsedNanos = System.nanoTime() - startNanos;
+            for (Mat frame : frames) frame.release();
+        }
+    }
+
+    /**
+     * Demande l'arrêt de la recherche ; elle s'interrompt à la fin de l'unité en cours.
+     */
+    public void cancel() {
+        cancelled = true;
+        result.cancel(false);
+    }
+
+    /**
+     * @return true si l'annulation a été demandée.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true si la recherche est terminée (trouvée, annulée ou en erreur).
+     */
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    /**
+     * @return Le résultat {r, s} ; annulé si le travail l'a été.
+     */
+    public CompletableFuture<int[]> result() {
+        return result;
+    }
+
+    /**
+     * @return Nombre de frames analysées ensemble.
+     */
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * @return L'écart de score avec la meilleure clé d'un autre s (NaN pour une recherche sur une seule frame).
+     */
+    public double getMargin() {
+        return margin;
+    }
+
+    /**
+     * @return La méthode de cassage utilisée.
+     */
+    public VideoScrambler.CrackMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * @return La métrique de score utilisée.
+     */
+    public VideoScrambler.ScoringMetric getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return La progression, entre 0 et 1.
+     */
+    public double getProgress() {
+        return Math.min(1.0, (double) doneUnits.get() / totalUnits);
+    }
+
+    /**
+     * @return Nombre de clés évaluées jusqu'ici.
+     */
+    public long getKeysEvaluated() {
+        return keysEvaluated.get();
+    }
+
+    /**
+     * @return Durée de la recherche en nanosecondes (en cours : depuis son début ; 0 si elle n'a pas commencé).
+     */
+    public long getElapsedNanos() {
+        if (startNanos == 0) return 0;
+        long elapsed = elapsedNanos;
+        return (elapsed > 0) ? elapsed : System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return Clés évaluées par seconde depuis le début de la recherche.
+     */
+    public double getKeysPerSecond() {
+        long elapsed = getElapsedNanos();
+        return (elapsed > 0) ? keysEvaluated.get() * 1e9 / elapsed : 0.0;
+    }
+
+    /**
+     * @return La meilleure clé {r, s} trouvée jusqu'ici, ou null si aucune unité n'est terminée.
+     */
+    public synchronized int[] getBestKey() {
+        return (bestR < 0) ? null : new int[]{bestR, bestS};
+    }
+
+    /**
+     * @return La corrélation moyenne de la meilleure clé trouvée jusqu'ici.
+     */
+    public synchronized double getBestScore() {
+        return bestScore;
+    }
+
+    @Override
+    public void checkCancelled() {
+        if (cancelled) throw new CancellationException("Key search cancelled");
+    }
+
+    @Override
+    public void begin(int totalUnits) {
+        this.doneUnits.set(0);
+        this.totalUnits = Math.max(1, totalUnits);
+    }
+
+    @Override
+    public void unitDone(int r, int s, double meanScore) {
+        synchronized (this) {
+            if (meanScore > bestScore) {
+                bestScore = meanScore;
+                bestR = r;
+                bestS = s;
+            }
+        }
+        doneUnits.incrementAndGet();
+        if (listener != null) listener.onProgress(this);
+    }
+
+    @Override
+    public void keysEvaluated(long count) {
+        keysEvaluated.addAndGet(count);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Suivi d'une recherche de clé : annulation et progression.
+ * Une recherche est découpée en unités de travail (par exemple une valeur de s) ;
+ * les unités peuvent se terminer en parallèle, dans n'importe quel ordre.
+ */
+public interface CrackMonitor {
+
+    /**
+     * Moniteur neutre : jamais annulé, progression ignorée.
+     */
+    CrackMonitor NONE = new CrackMonitor() {
+        @Override
+        public void checkCancelled() {
+        }
+
+        @Override
+        public void begin(int totalUnits) {
+        }
+
+        @Override
+        public void unitDone(int r, int s, double meanScore) {
+        }
+    };
+
+    /**
+     * Appelée entre deux unités de travail.
+     *
+     * @throws CancellationException si la recherche a été annulée.
+     */
+    void checkCancelled();
+
+    /**
+     * Annonce le nombre d'unités de travail de la recherche (ou de sa phase suivante).
+     *
+     * @param totalUnits Nombre d'unités à venir.
+     */
+    void begin(int totalUnits);
+
+    /**
+     * Signale la fin d'une unité de travail et la meilleure clé qu'elle a trouvée.
+     *
+     * @param r Meilleure clé R de l'unité.
+     * @param s Meilleure clé S de l'unité.
+     * @param meanScore Corrélation moyenne des lignes adjacentes pour cette clé.
+     */
+    void unitDone(int r, int s, double meanScore);
+
+    /**
+     * Compte les clés évaluées (débit de la recherche). Peut être appelée en parallèle.
+     *
+     * @param count Nombre de clés évaluées depuis le dernier appel de ce thread.
+     */
+    default void keysEvaluated(long count) {
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Protocole binaire de la recherche de clé répartie ({@link CrackCoordinator}, {@link CrackWorker}),
+ * entiers en big-endian. Le transport (TCP ou Unix) et les lectures/écritures complètes sont
+ * ceux de {@link ScrambleProtocol}.
+ *
+ * Worker -> coordinateur : magic et nombre de threads du worker, à la connexion ; puis un résultat
+ * par tranche reçue (meilleure clé et concurrente).
+ * Coordinateur -> worker : une recherche (matrice de similarité en triangle compact, nombre de
+ * valeurs de r), puis des tranches de valeurs de s, une à la fois. La fermeture de la connexion
+ * arrête le worker.
+ */
+public final class CrackProtocol {
+
+    /** "VCRK". */
+    public static final int MAGIC = 0x5643524B;
+
+    static final byte MSG_JOB = 1;
+    static final byte MSG_SHARD = 2;
+    static final byte MSG_RESULT = 3;
+
+    // Magic et nombre de threads
+    static final int HELLO_BYTES = 4 + 4;
+    // Type, recherche, début et fin de la tranche
+    static final int SHARD_BYTES = 1 + 3 * 4;
+    // Type, recherche, tranche, puis deux clés avec leur score
+    static final int RESULT_BYTES = 1 + 3 * 4 + 2 * (2 * 4 + 8);
+
+    private CrackProtocol() {
+    }
+
+    /**
+     * Tranche de l'espace des clés : toutes les valeurs de r pour s dans [sFrom, sTo).
+     */
+    static final class Shard {
+        final int sFrom;
+        final int sTo;
+
+        Shard(int sFrom, int sTo) {
+            this.sFrom = sFrom;
+            this.sTo = sTo;
+        }
+
+        @Override
+        public String toString() {
+            return "s=[" + sFrom + ", " + sTo + ")";
+        }
+    }
+
+    static void writeHello(SocketChannel channel, int threads) throws IOException {
+        ScrambleProtocol.writeFully(channel, ByteBuffer.allocate(HELLO_BYTES).putInt(MAGIC).putInt(threads).flip());
+    }
+
+    /**
+     * @return Le nombre de threads annoncé par le worker, ou -1 si ce n'est pas un worker.
+     */
+    static int readHello(SocketChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HELLO_BYTES);
+        ScrambleProtocol.readFully(channel, buffer);
+        buffer.flip();
+        return (buffer.getInt() == MAGIC) ? buffer.getInt() : -1;
+    }
+
+    /**
+     * Encode une recherche une seule fois ; chaque worker en reçoit une copie ({@code duplicate()}).
+     *
+     * @param jobId Numéro de la recherche.
+     * @param similarity Matrice de similarité de l'image chiffrée.
+     * @param rMax Nombre de valeurs de r de chaque tranche.
+     * @return Le message complet, prêt à être envoyé.
+     */
+    static ByteBuffer encodeJob(int jobId, RowSimilarity similarity, int rMax) {
+        float[] values = similarity.packedValues();
+        long messageBytes = 1 + 4 * 4 + values.length * 4L;
+        if (messageBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Similarity matrix too large to send: " + similarity.size() + " rows");
+        }
+        ByteBuffer message = ByteBuffer.allocate((int) messageBytes);
+        message.put(MSG_JOB).putInt(jobId).putInt(similarity.size()).putInt(rMax).putInt(values.length);
+        message.asFloatBuffer().put(values);
+        return message.position(message.capacity()).flip();
+    }
+
+    static void writeShard(SocketChannel channel, int jobId, Shard shard) throws IOException {
+        ScrambleProtocol.writeFully(channel, ByteBuffer.allocate(SHARD_BYTES)
+                .put(MSG_SHARD).putInt(jobId).putInt(shard.sFrom).putInt(shard.sTo).flip());
+    }
+
+    static void writeResult(SocketChannel channel, int jobId, Shard shard, KeySearchResult result) throws IOException {
+        ScrambleProtocol.writeFully(channel, ByteBuffer.allocate(RESULT_BYTES)
+                .put(MSG_RESULT).putInt(jobId).putInt(shard.sFrom).putInt(shard.sTo)
+                .putInt(result.r).putInt(result.s).putDouble(result.score)
+                .putInt(result.runnerUpR).putInt(result.runnerUpS).putDouble(result.runnerUpScore)
+                .flip());
+    }
+
+    /**
+     * Lit le résultat d'une tranche.
+     *
+     * @param jobId Recherche attendue.
+     * @param shard Tranche attendue.
+     * @throws IOException Si le message ne correspond pas à la tranche envoyée.
+     */
+    static KeySearchResult readResult(SocketChannel channel, int jobId, Shard shard) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RESULT_BYTES);
+        ScrambleProtocol.readFully(channel, buffer);
+        buffer.flip();
+        if (buffer.get() != MSG_RESULT || buffer.getInt() != jobId
+                || buffer.getInt() != shard.sFrom || buffer.getInt() != shard.sTo) {
+            throw new IOException("Unexpected result for " + shard);
+        }
+        return new KeySearchResult(buffer.getInt(), buffer.getInt(), buffer.getDouble(),
+                buffer.getInt(), buffer.getInt(), buffer.getDouble());
+    }
+}
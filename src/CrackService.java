@@ -0,0 +1,141 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Exécute les recherches de clé sur un pool dédié et borné.
+ * Les flux parallèles des recherches s'exécutent dans ce pool (et non dans le pool commun) :
+ * un cassage n'occupe jamais plus de {@code parallelism} cœurs et laisse les autres au traitement
+ * des frames. Une seule recherche est active à la fois ; une nouvelle demande pendant une
+ * recherche en cours est fusionnée avec elle.
+ */
+public class CrackService {
+
+    private final ForkJoinPool pool;
+    private CrackJob activeJob;
+    // Durée et débit des recherches abouties, null pour ne rien mesurer
+    private volatile PipelineMetrics metrics;
+
+    /**
+     * @param parallelism Nombre maximal de threads de recherche.
+     */
+    public CrackService(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("key-crack-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            // Le rendu vidéo reste prioritaire sur la recherche
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Lance une recherche de clé, ou renvoie la recherche déjà en cours (non annulée).
+     *
+     * @param frame Frame chiffrée ; une copie est faite seulement si une recherche est lancée.
+     * @param method Méthode de cassage.
+     * @param listener Notifié de la progression, ou null.
+     * @return Le travail lancé, ou la recherche en cours avec laquelle la demande a été fusionnée.
+     */
+    public synchronized CrackJob submit(Mat frame, VideoScrambler.CrackMethod method,
+                                        CrackJob.ProgressListener listener) {
+        return submit(frame, method, VideoScrambler.ScoringMetric.PEARSON, listener);
+    }
+
+    /**
+     * Lance une recherche de clé avec la métrique de score choisie, ou renvoie la recherche déjà en cours.
+     *
+     * @param frame Frame chiffrée ; une copie est faite seulement si une recherche est lancée.
+     * @param method Méthode de cassage.
+     * @param metric Métrique de score des paires de lignes.
+     * @param listener Notifié de la progression, ou null.
+     * @return Le travail lancé, ou la recherche en cours avec laquelle la demande a été fusionnée.
+     */
+    public synchronized CrackJob submit(Mat frame, VideoScrambler.CrackMethod method,
+                                        VideoScrambler.ScoringMetric metric, CrackJob.ProgressListener listener) {
+        return submit(frame, method, metric, KeySpace.DEFAULT, listener);
+    }
+
+    /**
+     * Lance une recherche de clé dans un espace de clés donné, ou renvoie la recherche déjà en cours.
+     *
+     * @param frame Frame chiffrée ; une copie est faite seulement si une recherche est lancée.
+     * @param method Méthode de cassage.
+     * @param metric Métrique de score des paires de lignes.
+     * @param keySpace Espace des clés à explorer.
+     * @param listener Notifié de la progression, ou null.
+     * @return Le travail lancé, ou la recherche en cours avec laquelle la demande a été fusionnée.
+     */
+    public synchronized CrackJob submit(Mat frame, VideoScrambler.CrackMethod method,
+                                        VideoScrambler.ScoringMetric metric, KeySpace keySpace,
+                                        CrackJob.ProgressListener listener) {
+        if (isBusy()) return activeJob;
+        return start(new CrackJob(Collections.singletonList(frame.clone()), method, metric, keySpace, listener));
+    }
+
+    /**
+     * Lance une recherche sur plusieurs frames chiffrées avec la même clé (corrélations cumulées),
+     * ou renvoie la recherche déjà en cours.
+     *
+     * @param frames Frames confiées au service (libérées par lui, même si la demande est fusionnée).
+     * @param listener Notifié de la progression, ou null.
+     * @return Le travail lancé, ou la recherche en cours avec laquelle la demande a été fusionnée.
+     */
+    public synchronized CrackJob submit(List<Mat> frames, CrackJob.ProgressListener listener) {
+        if (isBusy()) {
+            for (Mat frame : frames) frame.release();
+            return activeJob;
+        }
+        return start(new CrackJob(new ArrayList<>(frames), VideoScrambler.CrackMethod.EXHAUSTIVE,
+                VideoScrambler.ScoringMetric.PEARSON, KeySpace.DEFAULT, listener));
+    }
+
+    /**
+     * @param metrics Reçoit la durée et le nombre de clés évaluées de chaque recherche aboutie, ou null.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private boolean isBusy() {
+        return activeJob != null && !activeJob.isDone() && !activeJob.isCancelled();
+    }
+
+    private CrackJob start(CrackJob job) {
+        activeJob = job;
+        PipelineMetrics metrics = this.metrics;
+        if (metrics != null) {
+            job.result().whenComplete((key, error) -> {
+                if (error == null) metrics.recordCrack(job.getElapsedNanos(), job.getKeysEvaluated());
+            });
+        }
+        pool.execute(job::run);
+        return job;
+    }
+
+    /**
+     * @return La recherche en cours, ou null.
+     */
+    public synchronized CrackJob getActiveJob() {
+        return (activeJob != null && !activeJob.isDone()) ? activeJob : null;
+    }
+
+    /**
+     * Annule la recherche en cours et arrête le pool.
+     */
+    public synchronized void shutdown() {
+        if (activeJob != null) activeJob.cancel();
+        pool.shutdownNow();
+    }
+}
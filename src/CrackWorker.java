@@ -0,0 +1,191 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Worker de la recherche de clé répartie : se connecte au coordinateur ({@link CrackCoordinator}),
+ * reçoit la matrice de similarité de l'image chiffrée puis évalue les tranches de clés qu'on lui
+ * confie, sur son propre pool de threads. Travaille uniquement sur la matrice : la bibliothèque
+ * native OpenCV n'est pas chargée.
+ *
+ * Usage :
+ *   java CrackWorker [--connect tcp:[host:]port|unix:path] [--threads N] [--exit-after K]
+ *
+ * {@code --exit-after K} arrête brutalement le worker à la réception de sa tranche K+1, sans répondre
+ * (essai de la réaffectation des tranches d'un worker perdu).
+ */
+public class CrackWorker {
+
+    // Attente du coordinateur au démarrage (worker lancé avant lui)
+    private static final long CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final long CONNECT_RETRY_MILLIS = 200;
+
+    private final SocketAddress address;
+    private final ForkJoinPool pool;
+    private final int threads;
+    private final int exitAfter;
+
+    // Recherche en cours
+    private int jobId = -1;
+    private RowSimilarity similarity;
+    private int rMax;
+
+    /**
+     * @param address Adresse du coordinateur ({@link ScrambleProtocol#parseAddress}).
+     * @param threads Nombre de threads de recherche.
+     * @param exitAfter Nombre de tranches traitées avant un arrêt brutal (essais), ou -1.
+     */
+    public CrackWorker(SocketAddress address, int threads, int exitAfter) {
+        this.address = address;
+        this.threads = Math.max(1, threads);
+        this.pool = new ForkJoinPool(this.threads);
+        this.exitAfter = exitAfter;
+    }
+
+    /**
+     * Point d'entrée du worker.
+     *
+     * @param args Arguments de la ligne de commande.
+     */
+    public static void main(String[] args) {
+        String connect = "tcp:127.0.0.1:7071";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int exitAfter = -1;
+        SocketAddress address;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+                String value = args[++i];
+                switch (arg) {
+                    case "--connect": connect = value; break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--exit-after": exitAfter = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            address = ScrambleProtocol.parseAddress(connect);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java CrackWorker [--connect tcp:[host:]port|unix:path] [--threads N] [--exit-after K]");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            new CrackWorker(address, threads, exitAfter).run();
+        } catch (IOException e) {
+            System.err.println("Crack worker stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Traite les messages du coordinateur jusqu'à la fermeture de la connexion.
+     */
+    public void run() throws IOException {
+        try (SocketChannel channel = connect()) {
+            CrackProtocol.writeHello(channel, threads);
+            int shardsDone = 0;
+            ByteBuffer type = ByteBuffer.allocate(1);
+
+            while (true) {
+                type.clear();
+                try {
+                    ScrambleProtocol.readFully(channel, type);
+                } catch (EOFException e) {
+                    return; // Fin normale : le coordinateur a fermé la connexion
+                }
+                switch (type.get(0)) {
+                    case CrackProtocol.MSG_JOB:
+                        readJob(channel);
+                        break;
+                    case CrackProtocol.MSG_SHARD:
+                        ByteBuffer header = ByteBuffer.allocate(CrackProtocol.SHARD_BYTES - 1);
+                        ScrambleProtocol.readFully(channel, header);
+                        header.flip();
+                        int shardJob = header.getInt();
+                        CrackProtocol.Shard shard = new CrackProtocol.Shard(header.getInt(), header.getInt());
+                        if (shardJob != jobId) throw new IOException("Shard for unknown job " + shardJob);
+                        if (shardsDone == exitAfter) {
+                            System.err.println("Crack worker exiting on purpose before " + shard);
+                            Runtime.getRuntime().halt(3);
+                        }
+                        CrackProtocol.writeResult(channel, jobId, shard, search(shard));
+                        shardsDone++;
+                        break;
+                    default:
+                        throw new IOException("Unknown message type " + type.get(0));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return ScrambleProtocol.connect(address);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) throw e;
+                try {
+                    Thread.sleep(CONNECT_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lit une nouvelle recherche : numéro, matrice de similarité et nombre de valeurs de r.
+     */
+    private void readJob(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4 * 4);
+        ScrambleProtocol.readFully(channel, header);
+        header.flip();
+        int newJobId = header.getInt();
+        int size = header.getInt();
+        int newRMax = header.getInt();
+        int count = header.getInt();
+        if (count != RowSimilarity.packedSize(size)) throw new IOException("Inconsistent similarity matrix");
+
+        ByteBuffer body = ByteBuffer.allocate(count * 4);
+        ScrambleProtocol.readFully(channel, body);
+        float[] values = new float[count];
+        body.flip().asFloatBuffer().get(values);
+
+        jobId = newJobId;
+        rMax = newRMax;
+        similarity = RowSimilarity.fromPackedValues(size, values);
+    }
+
+    /**
+     * Recherche exhaustive d'une tranche, sur le pool du worker (les flux parallèles lancés depuis
+     * une tâche du pool restent dans ce pool).
+     */
+    private KeySearchResult search(CrackProtocol.Shard shard) throws IOException {
+        try {
+            return pool.submit(() -> VideoScrambler.searchKey(similarity, rMax, shard.sFrom, shard.sTo,
+                    CrackMonitor.NONE)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during " + shard, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Search failed on " + shard, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Affichage d'un flux de frames OpenCV dans une ImageView, sans allocation par frame.
+ * Une seule WritableImage est conservée par vue et les pixels y sont copiés directement
+ * (format BGRA prémultiplié, celui utilisé en interne par JavaFX).
+ * Une seule frame au plus attend l'affichage : si le thread JavaFX n'a pas encore dessiné
+ * la précédente, la nouvelle est ignorée sans bloquer l'appelant.
+ */
+public class FrameDisplay {
+
+    /**
+     * Tampon de pixels réutilisable.
+     */
+    private static final class PixelFrame {
+        int width;
+        int height;
+        byte[] pixels = new byte[0];
+    }
+
+    private static final Scalar OVERLAY_BACKGROUND = new Scalar(0, 0, 0, 255);
+    private static final Scalar OVERLAY_TEXT = new Scalar(80, 255, 80, 255);
+
+    private final ImageView view;
+
+    // Frame prête, en attente du thread JavaFX
+    private final AtomicReference<PixelFrame> pending = new AtomicReference<>();
+    // Tampons libres (au plus deux en circulation : un en attente, un en cours de dessin)
+    private final ConcurrentLinkedQueue<PixelFrame> free = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean paintScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedFrames = new AtomicLong();
+    // Durée de conversion de chaque frame affichée, null pour ne rien mesurer
+    private volatile LatencyHistogram conversionLatency;
+    // Texte incrusté sur les frames affichées (pas sur la source), null sans incrustation
+    private volatile String[] overlay;
+
+    // Conversion BGRA, réservée au thread appelant show()
+    private final Mat bgra = new Mat();
+    // Image affichée, réservée au thread JavaFX
+    private WritableImage image;
+
+    /**
+     * @param view Vue JavaFX dans laquelle afficher les frames.
+     */
+    public FrameDisplay(ImageView view) {
+        this.view = view;
+    }
+
+    /**
+     * @param conversionLatency Reçoit la durée de conversion (BGRA, incrustation et copie) de
+     *                          chaque frame affichée, ou null.
+     */
+    public void setConversionLatency(LatencyHistogram conversionLatency) {
+        this.conversionLatency = conversionLatency;
+    }
+
+    /**
+     * Définit les lignes incrustées en haut à gauche des prochaines frames affichées.
+     * Le texte est dessiné sur la copie d'affichage : la frame passée à {@link #show} n'est pas modifiée.
+     *
+     * @param lines Lignes à incruster, ou null pour ne rien incruster.
+     */
+    public void setOverlay(String[] lines) {
+        this.overlay = lines;
+    }
+
+    /**
+     * Soumet une frame à l'affichage. Ne bloque jamais.
+     * Doit être appelée depuis un seul thread (l'étage d'affichage de la chaîne).
+     *
+     * @param frame Frame OpenCV (1 ou 3 canaux, 8 bits). Elle n'est plus utilisée après le retour.
+     */
+    public void show(Mat frame) {
+        if (frame == null || frame.empty()) return;
+
+        // Le thread JavaFX n'a pas encore dessiné la frame précédente : inutile de convertir celle-ci
+        if (pending.get() != null) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (frame.channels() == 1) {
+            Imgproc.cvtColor(frame, bgra, Imgproc.COLOR_GRAY2BGRA);
+        } else if (frame.channels() == 3) {
+            Imgproc.cvtColor(frame, bgra, Imgproc.COLOR_BGR2BGRA);
+        } else {
+            frame.copyTo(bgra);
+        }
+        String[] lines = overlay;
+        if (lines != null) drawOverlay(lines);
+
+        PixelFrame buffer = free.poll();
+        if (buffer == null) buffer = new PixelFrame();
+
+        int size = bgra.cols() * bgra.rows() * 4;
+        if (buffer.pixels.length != size) buffer.pixels = new byte[size];
+        buffer.width = bgra.cols();
+        buffer.height = bgra.rows();
+        bgra.get(0, 0, buffer.pixels);
+        LatencyHistogram latency = conversionLatency;
+        if (latency != null) latency.record(System.nanoTime() - start);
+
+        PixelFrame previous = pending.getAndSet(buffer);
+        if (previous != null) {
+            droppedFrames.incrementAndGet();
+            free.offer(previous);
+        }
+        if (paintScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::paint);
+        }
+    }
+
+    /**
+     * @return Nombre de frames non affichées car le thread JavaFX était en retard.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Incruste le texte sur la copie BGRA, sur un bandeau sombre, à une taille lisible une fois
+     * la frame réduite dans la vue.
+     */
+    private void drawOverlay(String[] lines) {
+        double scale = Math.max(0.4, bgra.cols() / 1600.0);
+        int lineHeight = (int) Math.ceil(22 * scale);
+        int thickness = Math.max(1, (int) Math.round(scale));
+        Imgproc.rectangle(bgra, new Point(0, 0), new Point(bgra.cols(), lineHeight * lines.length + lineHeight / 2),
+                OVERLAY_BACKGROUND, Imgproc.FILLED);
+        for (int i = 0; i < lines.length; i++) {
+            Imgproc.putText(bgra, lines[i], new Point(lineHeight / 3.0, lineHeight * (i + 1)),
+                    Imgproc.FONT_HERSHEY_SIMPLEX, 0.6 * scale, OVERLAY_TEXT, thickness);
+        }
+    }
+
+    /**
+     * Dessine la dernière frame en attente (thread JavaFX).
+     */
+    private void paint() {
+        paintScheduled.set(false);
+        PixelFrame frame = pending.getAndSet(null);
+        if (frame == null) return;
+
+        if (image == null || (int) image.getWidth() != frame.width || (int) image.getHeight() != frame.height) {
+            image = new WritableImage(frame.width, frame.height);
+            view.setImage(image);
+        }
+        image.getPixelWriter().setPixels(0, 0, frame.width, frame.height,
+                PixelFormat.getByteBgraPreInstance(), frame.pixels, 0, frame.width * 4);
+
+        free.offer(frame);
+    }
+}
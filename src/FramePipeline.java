@@ -0,0 +1,311 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Chaîne de traitement vidéo en trois étages :
+ * lecture (un thread) -> transformation (pool de threads) -> écriture/affichage (un thread).
+ * Les frames sont remises dans l'ordre de lecture avant l'étage d'écriture.
+ * Le nombre de frames en cours est borné : en mode DROP (caméra) les frames en trop sont
+ * ignorées à la lecture, en mode BLOCK (fichier) la lecture attend qu'une place se libère.
+ */
+public class FramePipeline {
+
+    /**
+     * Politique appliquée quand la chaîne est pleine.
+     */
+    public enum BackpressurePolicy {
+        /** Ignore la frame lue (flux temps réel, on privilégie la latence). */
+        DROP,
+        /** Attend une place libre (fichier, aucune frame ne doit être perdue). */
+        BLOCK
+    }
+
+    /**
+     * Étage de lecture. Renvoie null ou une Mat vide en fin de flux.
+     */
+    @FunctionalInterface
+    public interface FrameSource {
+        Mat read();
+    }
+
+    /**
+     * Étage de transformation, appelé en parallèle depuis le pool de threads.
+     * S'il lève une exception, la chaîne recycle la frame d'entrée ; la transformation doit rendre
+     * elle-même la frame de sortie qu'elle a pu emprunter.
+     */
+    @FunctionalInterface
+    public interface FrameTransform {
+        Mat apply(Mat frame);
+    }
+
+    /**
+     * Étage de transformation qui reçoit aussi le numéro de la frame dans le flux
+     * (compté à la lecture, frames ignorées comprises). Même contrat d'erreur que {@link FrameTransform}.
+     */
+    @FunctionalInterface
+    public interface IndexedFrameTransform {
+        Mat apply(Mat frame, long frameIndex);
+    }
+
+    /**
+     * Étage d'écriture/affichage, appelé depuis un thread unique, dans l'ordre des frames.
+     * S'il lève une exception, les deux Mat sont rendues au recycleur : il ne doit alors pas les garder.
+     */
+    @FunctionalInterface
+    public interface FrameSink {
+        void accept(Mat original, Mat processed);
+    }
+
+    private final FrameSource source;
+    private final IndexedFrameTransform transform;
+    private final FrameSink sink;
+    private final BackpressurePolicy policy;
+    private final int workers;
+    private final Runnable onEndOfStream;
+
+    // Places disponibles dans la chaîne (frames lues mais pas encore écrites)
+    private final Semaphore slots;
+    // Résultats en attente, dans l'ordre de lecture
+    private final BlockingQueue<Future<Mat[]>> inFlight = new LinkedBlockingQueue<>();
+
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong processedFrames = new AtomicLong();
+
+    // Reçoit les frames qui ne passeront pas par l'étage d'écriture (ignorées ou abandonnées)
+    private volatile Consumer<Mat> frameRecycler = mat -> { };
+
+    private ExecutorService workerPool;
+    private Thread decodeThread;
+    private Thread sinkThread;
+    private volatile boolean running = false;
+
+    /**
+     * @param source Étage de lecture.
+     * @param transform Étage de transformation.
+     * @param sink Étage d'écriture/affichage.
+     * @param workers Nombre de threads de transformation.
+     * @param capacity Nombre maximal de frames en cours dans la chaîne.
+     * @param policy Comportement quand la chaîne est pleine.
+     * @param onEndOfStream Action exécutée (depuis le thread d'écriture) une fois la dernière frame écrite.
+     */
+    public FramePipeline(FrameSource source, FrameTransform transform, FrameSink sink,
+                         int workers, int capacity, BackpressurePolicy policy, Runnable onEndOfStream) {
+        this(source, (frame, frameIndex) -> transform.apply(frame), sink, workers, capacity, policy, onEndOfStream);
+    }
+
+    /**
+     * Variante dont l'étage de transformation connaît le numéro de chaque frame.
+     *
+     * @see #FramePipeline(FrameSource, FrameTransform, FrameSink, int, int, BackpressurePolicy, Runnable)
+     */
+    public FramePipeline(FrameSource source, IndexedFrameTransform transform, FrameSink sink,
+                         int workers, int capacity, BackpressurePolicy policy, Runnable onEndOfStream) {
+        this.source = source;
+        this.transform = transform;
+        this.sink = sink;
+        this.workers = Math.max(1, workers);
+        this.slots = new Semaphore(Math.max(1, capacity));
+        this.policy = policy;
+        this.onEndOfStream = onEndOfStream;
+    }
+
+    /**
+     * Définit qui récupère les frames ignorées (mode DROP), en erreur ou abandonnées à l'arrêt,
+     * par exemple pour les rendre à une {@link MatPool}. Les frames écrites restent à la charge
+     * de l'étage d'écriture.
+     *
+     * @param frameRecycler Action appelée sur chaque Mat non transmise à l'étage d'écriture.
+     */
+    public void setFrameRecycler(Consumer<Mat> frameRecycler) {
+        this.frameRecycler = frameRecycler;
+    }
+
+    /**
+     * Démarre les trois étages.
+     */
+    public void start() {
+        if (running) return;
+        running = true;
+
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "frame-transform-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.decodeThread = new Thread(this::decodeLoop, "frame-decode");
+        this.sinkThread = new Thread(this::sinkLoop, "frame-sink");
+        this.decodeThread.setDaemon(true);
+        this.sinkThread.setDaemon(true);
+        this.sinkThread.start();
+        this.decodeThread.start();
+    }
+
+    /**
+     * Arrête la chaîne et attend la fin des étages de lecture et d'écriture.
+     * Les frames encore en cours sont abandonnées.
+     */
+    public void stop() {
+        running = false;
+        // La lecture native n'est pas interruptible : on attend qu'elle rende la main
+        joinQuietly(decodeThread);
+        joinQuietly(sinkThread);
+        if (workerPool != null) {
+            workerPool.shutdown();
+            try {
+                workerPool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Les frames transformées mais jamais écrites sont rendues
+        Future<Mat[]> pendingResult;
+        while ((pendingResult = inFlight.poll()) != null) {
+            if (!pendingResult.isDone()) continue;
+            try {
+                Mat[] result = pendingResult.get();
+                if (result != null) {
+                    frameRecycler.accept(result[0]);
+                    frameRecycler.accept(result[1]);
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                // Frame perdue : sa mémoire sera rendue par le GC
+            }
+        }
+    }
+
+    /**
+     * @return Nombre de frames ignorées faute de place (mode DROP).
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return Nombre de frames passées par l'étage d'écriture.
+     */
+    public long getProcessedFrames() {
+        return processedFrames.get();
+    }
+
+    /**
+     * @return Nombre de frames lues mais pas encore écrites.
+     */
+    public int getQueueDepth() {
+        return inFlight.size();
+    }
+
+    /**
+     * Boucle de l'étage de lecture : lit, réserve une place et confie la frame au pool.
+     */
+    private void decodeLoop() {
+        long frameIndex = 0;
+        try {
+            while (running) {
+                Mat frame = source.read();
+                if (frame == null || frame.empty()) {
+                    // Marqueur de fin, placé derrière les frames déjà en cours
+                    inFlight.put(CompletableFuture.completedFuture(null));
+                    return;
+                }
+
+                long index = frameIndex++;
+                if (policy == BackpressurePolicy.DROP) {
+                    if (!slots.tryAcquire()) {
+                        droppedFrames.incrementAndGet();
+                        frameRecycler.accept(frame);
+                        continue;
+                    }
+                } else {
+                    slots.acquire();
+                }
+
+                inFlight.put(workerPool.submit(() -> {
+                    try {
+                        return new Mat[]{frame, transform.apply(frame, index)};
+                    } catch (RuntimeException e) {
+                        frameRecycler.accept(frame);
+                        throw e;
+                    }
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Exception in frame decode stage: " + e);
+        }
+    }
+
+    /**
+     * Boucle de l'étage d'écriture : récupère les résultats dans l'ordre de lecture.
+     */
+    private void sinkLoop() {
+        try {
+            while (running) {
+                Future<Mat[]> next = inFlight.poll(100, TimeUnit.MILLISECONDS);
+                if (next == null) continue;
+
+                Mat[] result;
+                try {
+                    result = next.get();
+                } catch (ExecutionException e) {
+                    System.err.println("Exception in frame transform stage: " + e.getCause());
+                    slots.release();
+                    continue;
+                }
+
+                if (result == null) {
+                    // Fin de flux : toutes les frames précédentes ont été écrites
+                    running = false;
+                    if (onEndOfStream != null) onEndOfStream.run();
+                    return;
+                }
+
+                try {
+                    sink.accept(result[0], result[1]);
+                    processedFrames.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // Une frame en erreur ne doit pas arrêter l'étage : la place serait perdue
+                    // et la lecture bloquée (BLOCK) ou toutes les frames ignorées (DROP)
+                    System.err.println("Exception in frame sink stage: " + e);
+                    frameRecycler.accept(result[0]);
+                    frameRecycler.accept(result[1]);
+                } finally {
+                    slots.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        if (thread == null || thread == Thread.currentThread()) return;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
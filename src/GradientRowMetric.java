@@ -0,0 +1,27 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+/**
+ * Continuité des gradients : compare les variations horizontales des deux lignes
+ * (différence entre pixels voisins) plutôt que leurs niveaux. Deux lignes voisines d'une image
+ * partagent leurs contours même sous un dégradé vertical ou un changement d'éclairage,
+ * qui pénalisent {@link SadRowMetric}. Accumulation en int.
+ */
+final class GradientRowMetric implements RowMetric {
+
+    @Override
+    public float similarity(byte[] pixels, int offsetA, int offsetB, int width) {
+        if (width < 2) return 1f;
+        // Au plus 510 par colonne
+        int total = 0;
+        for (int x = 0; x < width - 1; x++) {
+            int gradientA = (pixels[offsetA + x + 1] & 0xFF) - (pixels[offsetA + x] & 0xFF);
+            int gradientB = (pixels[offsetB + x + 1] & 0xFF) - (pixels[offsetB + x] & 0xFF);
+            total += Math.abs(gradientA - gradientB);
+        }
+        return 1f - total / (510f * (width - 1));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lignes d'analyse en niveaux de gris 8 bits ({@code CV_8U}) : image réduite en largeur, gardée
+ * telle quelle (un octet par pixel, quatre fois moins que {@link AnalysisRows}), pour les
+ * métriques entières ({@link RowMetric}).
+ */
+public class GreyRows {
+
+    private final byte[] pixels;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param pixels Pixels en niveaux de gris, lignes contiguës.
+     * @param width Nombre de pixels par ligne.
+     * @param height Nombre de lignes.
+     */
+    public GreyRows(byte[] pixels, int width, int height) {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Pixel count does not match " + width + "x" + height);
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Prépare les lignes d'analyse d'une image.
+     *
+     * @param image Image à analyser (1 ou 3 canaux, 8 bits).
+     * @param analysisWidth Largeur de travail.
+     * @return Les lignes en niveaux de gris.
+     */
+    public static GreyRows fromImage(Mat image, int analysisWidth) {
+        Mat analysisMat = new Mat();
+        Imgproc.resize(image, analysisMat, new Size(analysisWidth, image.height()));
+
+        if (analysisMat.channels() > 1) {
+            Imgproc.cvtColor(analysisMat, analysisMat, Imgproc.COLOR_BGR2GRAY);
+        }
+
+        int h = analysisMat.rows();
+        int w = analysisMat.cols();
+        byte[] pixels = new byte[h * w];
+        analysisMat.get(0, 0, pixels);
+        analysisMat.release();
+        return new GreyRows(pixels, w, h);
+    }
+
+    /**
+     * Prépare les lignes d'analyse à partir d'un plan de luminance brut (Y d'une frame Y4M),
+     * sans OpenCV : chaque pixel d'analyse est la moyenne des pixels de la colonne correspondante.
+     *
+     * @param luma Plan Y (lignes contiguës de {@code width} octets, à partir de la position courante).
+     * @param width Largeur de l'image.
+     * @param height Hauteur de l'image.
+     * @param analysisWidth Largeur de travail (au plus {@code width}).
+     * @return Les lignes en niveaux de gris.
+     */
+    public static GreyRows fromLuma(ByteBuffer luma, int width, int height, int analysisWidth) {
+        int w = Math.min(analysisWidth, width);
+        int base = luma.position();
+        byte[] pixels = new byte[w * height];
+        for (int y = 0; y < height; y++) {
+            int row = base + y * width;
+            for (int x = 0; x < w; x++) {
+                int from = (int) ((long) x * width / w);
+                int to = (int) ((long) (x + 1) * width / w);
+                int sum = 0;
+                for (int k = from; k < to; k++) sum += luma.get(row + k) & 0xFF;
+                pixels[y * w + x] = (byte) ((sum + (to - from) / 2) / (to - from));
+            }
+        }
+        return new GreyRows(pixels, w, height);
+    }
+
+    /**
+     * @return Nombre de lignes.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @return Nombre de pixels par ligne.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * @return Les pixels, lignes contiguës (ne pas modifier).
+     */
+    byte[] pixels() {
+        return pixels;
+    }
+
+    /**
+     * Similarité des lignes a et b selon la métrique donnée.
+     */
+    public float similarity(int a, int b, RowMetric metric) {
+        return metric.similarity(pixels, a * width, b * width, width);
+    }
+}
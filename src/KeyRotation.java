@@ -0,0 +1,66 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.security.SecureRandom;
+
+/**
+ * Rotation de la clé de chiffrement : une nouvelle clé (r, s) toutes les {@code period} frames.
+ * Casser une frame ne donne plus que la clé de sa période ; le déchiffrement lit la clé cachée
+ * de chaque frame (stéganographie obligatoire).
+ * La clé d'une frame ne dépend que de son numéro et d'une graine secrète : les frames peuvent
+ * être chiffrées en parallèle, dans n'importe quel ordre, sans état partagé.
+ */
+public final class KeyRotation {
+
+    private final long seed;
+    private final int period;
+
+    /**
+     * Rotation à graine aléatoire.
+     *
+     * @param period Nombre de frames par clé (1 = une clé par frame).
+     */
+    public KeyRotation(int period) {
+        this(new SecureRandom().nextLong(), period);
+    }
+
+    /**
+     * @param seed Graine secrète de la suite de clés.
+     * @param period Nombre de frames par clé (1 = une clé par frame).
+     */
+    public KeyRotation(long seed, int period) {
+        if (period < 1) throw new IllegalArgumentException("Rotation period must be at least 1 frame: " + period);
+        this.seed = seed;
+        this.period = period;
+    }
+
+    /**
+     * @return Nombre de frames par clé.
+     */
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Renvoie la clé d'une frame.
+     *
+     * @param frameIndex Numéro de la frame dans le flux.
+     * @return Un tableau {r, s} (r sur 8 bits, s sur 7 bits).
+     */
+    public int[] keyFor(long frameIndex) {
+        long bits = mix(seed + (frameIndex / period) * 0x9E3779B97F4A7C15L);
+        return new int[]{(int) (bits & 0xFF), (int) ((bits >>> 8) & 0x7F)};
+    }
+
+    /**
+     * Mélange de 64 bits (finaliseur de SplittableRandom) : des périodes voisines donnent des clés sans rapport.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+/**
+ * Résultat d'une recherche exhaustive : meilleure clé et meilleure clé concurrente, prise sur
+ * un autre pas s. Les autres valeurs de r du même s ne sont que des décalages circulaires de la
+ * gagnante, et le pas miroir la parcourt à l'envers ({@link #relatedSteps}) : seules quelques
+ * paires de lignes changent, ces clés ne départagent rien.
+ * L'écart entre les deux scores mesure la confiance dans le résultat : un écart de l'ordre
+ * d'une corrélation (une paire de lignes) ou moins signale une image trop pauvre pour conclure.
+ */
+public final class KeySearchResult {
+
+    public final int r;
+    public final int s;
+    public final double score;
+    public final int runnerUpR;
+    public final int runnerUpS;
+    public final double runnerUpScore;
+
+    public KeySearchResult(int r, int s, double score, int runnerUpR, int runnerUpS, double runnerUpScore) {
+        this.r = r;
+        this.s = s;
+        this.score = score;
+        this.runnerUpR = runnerUpR;
+        this.runnerUpS = runnerUpS;
+        this.runnerUpScore = runnerUpScore;
+    }
+
+    /**
+     * @return La clé retenue {r, s}.
+     */
+    public int[] key() {
+        return new int[]{r, s};
+    }
+
+    /**
+     * @return L'écart de score (somme des corrélations adjacentes) avec la meilleure clé d'un autre pas.
+     */
+    public double margin() {
+        return score - runnerUpScore;
+    }
+
+    /**
+     * Indique si deux pas donnent presque la même image déchiffrée : pas équivalents (même
+     * permutation dans le plus grand bloc) ou miroirs (2s'+1 ≡ -(2s+1) : même suite de lignes,
+     * parcourue à l'envers). Une telle clé n'est pas une concurrente.
+     *
+     * @param s1 Premier pas.
+     * @param s2 Second pas.
+     * @param rows Hauteur de l'image.
+     * @return true si les deux pas sont équivalents ou miroirs.
+     */
+    public static boolean relatedSteps(int s1, int s2, int rows) {
+        // 2s+1 modulo N ne dépend que de s modulo N/2
+        int half = Integer.highestOneBit(Math.max(rows, 2)) / 2;
+        return (s1 - s2) % half == 0 || ((long) s1 + s2 + 1) % half == 0;
+    }
+
+    /**
+     * Combine les résultats de deux recherches sur des tranches disjointes de valeurs de s
+     * (même matrice de similarité) : même résultat qu'une seule recherche sur leur réunion.
+     *
+     * @param other Résultat de l'autre tranche.
+     * @param rows Hauteur de l'image (pas équivalents ou miroirs, voir {@link #relatedSteps}).
+     * @return La meilleure clé des deux tranches et sa concurrente.
+     */
+    public KeySearchResult merge(KeySearchResult other, int rows) {
+        // À score égal (clés équivalentes), la plus petite clé, quel que soit l'ordre de combinaison
+        boolean otherFirst = (other.score > score) || (other.score == score
+                && (other.s < s || (other.s == s && other.r < r)));
+        KeySearchResult best = otherFirst ? other : this;
+        KeySearchResult worst = (best == this) ? other : this;
+
+        // Concurrente : la meilleure des autres clés, hors pas équivalents ou miroirs de la gagnante
+        int secondR = best.runnerUpR, secondS = best.runnerUpS;
+        double secondScore = best.runnerUpScore;
+        if (!relatedSteps(best.s, worst.s, rows)) {
+            if (worst.score > secondScore) {
+                secondScore = worst.score;
+                secondR = worst.r;
+                secondS = worst.s;
+            }
+        } else if (!relatedSteps(best.s, worst.runnerUpS, rows) && worst.runnerUpScore > secondScore) {
+            secondScore = worst.runnerUpScore;
+            secondR = worst.runnerUpR;
+            secondS = worst.runnerUpS;
+        }
+        return new KeySearchResult(best.r, best.s, best.score, secondR, secondS, secondScore);
+    }
+
+    @Override
+    public String toString() {
+        return "R=" + r + ", S=" + s + " (Score: " + String.format("%.2f", score) +
+                ", marge: " + String.format("%.2f", margin()) +
+                " sur R=" + runnerUpR + ", S=" + runnerUpS + ")";
+    }
+}
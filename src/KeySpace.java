@@ -0,0 +1,123 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.util.Locale;
+
+/**
+ * Espace des clés (r, s) exploré par la cryptanalyse : r dans [0, rMax), s dans [0, sMax).
+ * L'espace par défaut (r sur 8 bits, s sur 7 bits) est celui que la stéganographie sait cacher ;
+ * un espace plus large (par exemple 16 bits chacun) se chiffre avec la même formule.
+ *
+ * La permutation d'une image de hauteur h ne dépend que de r modulo N et de s modulo N/2, où N
+ * est le plus grand bloc (puissance de 2 ≤ h) : {@link #effectiveFor(int)} réduit l'espace aux
+ * clés distinctes pour cette hauteur, seules à devoir être évaluées.
+ */
+public final class KeySpace {
+
+    /** r sur 8 bits, s sur 7 bits. */
+    public static final KeySpace DEFAULT = new KeySpace(256, 128);
+
+    private final int rMax;
+    private final int sMax;
+
+    /**
+     * @param rMax Nombre de valeurs possibles de r.
+     * @param sMax Nombre de valeurs possibles de s.
+     */
+    public KeySpace(int rMax, int sMax) {
+        if (rMax < 1 || sMax < 1) {
+            throw new IllegalArgumentException("Key space must contain at least one key: " + rMax + "x" + sMax);
+        }
+        this.rMax = rMax;
+        this.sMax = sMax;
+    }
+
+    /**
+     * Interprète un espace de clés écrit {@code RxS} (par exemple {@code 65536x65536}).
+     *
+     * @param text Texte à lire.
+     * @return L'espace correspondant.
+     */
+    public static KeySpace parse(String text) {
+        String[] parts = text.toLowerCase(Locale.ROOT).split("x");
+        if (parts.length != 2) throw new IllegalArgumentException("Key space must be RxS: " + text);
+        try {
+            return new KeySpace(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid key space: " + text);
+        }
+    }
+
+    /**
+     * @return Nombre de valeurs possibles de r.
+     */
+    public int rMax() {
+        return rMax;
+    }
+
+    /**
+     * @return Nombre de valeurs possibles de s.
+     */
+    public int sMax() {
+        return sMax;
+    }
+
+    /**
+     * @return Nombre de clés de l'espace.
+     */
+    public long size() {
+        return (long) rMax * sMax;
+    }
+
+    /**
+     * @return true si la clé (r, s) appartient à l'espace.
+     */
+    public boolean contains(int r, int s) {
+        return r >= 0 && r < rMax && s >= 0 && s < sMax;
+    }
+
+    /**
+     * Vérifie qu'une clé appartient à l'espace.
+     *
+     * @throws IllegalArgumentException si la clé est hors de l'espace.
+     */
+    public void check(int r, int s) {
+        if (!contains(r, s)) {
+            throw new IllegalArgumentException("Key (" + r + ", " + s + ") outside key space " + this);
+        }
+    }
+
+    /**
+     * Sous-espace des clés donnant des permutations distinctes pour une hauteur d'image :
+     * toute clé de l'espace équivaut (même permutation) à une clé du sous-espace.
+     *
+     * @param height Hauteur de l'image.
+     * @return L'espace réduit (lui-même s'il n'y a rien à réduire).
+     */
+    public KeySpace effectiveFor(int height) {
+        int blockSize = Integer.highestOneBit(Math.max(height, 2));
+        int effectiveR = Math.min(rMax, blockSize);
+        int effectiveS = Math.min(sMax, blockSize / 2);
+        return (effectiveR == rMax && effectiveS == sMax) ? this : new KeySpace(effectiveR, effectiveS);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof KeySpace)) return false;
+        KeySpace space = (KeySpace) other;
+        return rMax == space.rMax && sMax == space.sMax;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * rMax + sMax;
+    }
+
+    @Override
+    public String toString() {
+        return rMax + "x" + sMax;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Chronologie des clés d'une vidéo : plages de frames -> clé (r, s).
+ * Produite par {@link KeyTimelineJob} à partir de frames échantillonnées. Entre deux plages
+ * de clés différentes, la frame exacte du changement n'est pas connue : pour les frames de cet
+ * intervalle, {@link #keyFor} essaie les deux clés voisines et garde la plus plausible.
+ */
+public class KeyTimeline {
+
+    /**
+     * Plage de frames (bornes incluses) chiffrées avec une même clé.
+     */
+    public static final class Segment {
+        public final long firstFrame;
+        public final long lastFrame;
+        public final int r;
+        public final int s;
+
+        public Segment(long firstFrame, long lastFrame, int r, int s) {
+            this.firstFrame = firstFrame;
+            this.lastFrame = lastFrame;
+            this.r = r;
+            this.s = s;
+        }
+
+        @Override
+        public String toString() {
+            return "frames " + firstFrame + "-" + lastFrame + " : R=" + r + ", S=" + s;
+        }
+    }
+
+    private final List<Segment> segments;
+
+    /**
+     * @param segments Plages triées et disjointes.
+     */
+    public KeyTimeline(List<Segment> segments) {
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * Regroupe les clés des frames échantillonnées en plages.
+     * Deux clés sont considérées identiques si elles donnent la même permutation
+     * (sur une image peu haute, plusieurs clés sont équivalentes). Un changement de clé n'est retenu
+     * que s'il est confirmé par l'échantillon suivant : un échantillon isolé (cassage raté sur une
+     * frame pauvre) ne coupe pas la plage en cours. L'intervalle d'échantillonnage doit donc rester
+     * sous la moitié de la durée d'une clé.
+     *
+     * @param samples Frame échantillonnée -> {r, s}, triées par numéro de frame.
+     * @param frameCount Nombre total de frames de la vidéo.
+     * @param height Hauteur des frames.
+     * @return La chronologie ; la première plage commence à la frame 0, la dernière finit à la fin.
+     */
+    public static KeyTimeline fromSamples(SortedMap<Long, int[]> samples, long frameCount, int height) {
+        List<Segment> segments = new ArrayList<>();
+        long first = 0;
+        long last = 0;
+        int[] key = null;
+
+        List<Map.Entry<Long, int[]>> entries = new ArrayList<>(samples.entrySet());
+        for (int i = 0; i < entries.size(); i++) {
+            long index = entries.get(i).getKey();
+            int[] sampleKey = entries.get(i).getValue();
+            boolean confirmed = i + 1 == entries.size()
+                    || sameKey(height, sampleKey, entries.get(i + 1).getValue());
+            if (key == null) {
+                // Première clé : la dernière chance est le dernier échantillon
+                if (!confirmed) continue;
+                key = sampleKey;
+            } else if (!sameKey(height, key, sampleKey)) {
+                // Échantillon isolé (ou dernier échantillon, non confirmable) : ignoré
+                if (!confirmed || i + 1 == entries.size()) continue;
+                // Changement de clé quelque part entre les deux échantillons
+                segments.add(new Segment(first, last, key[0], key[1]));
+                first = index;
+                key = sampleKey;
+            }
+            last = index;
+        }
+        if (key != null) {
+            segments.add(new Segment(first, Math.max(last, frameCount - 1), key[0], key[1]));
+        }
+        return new KeyTimeline(segments);
+    }
+
+    private static boolean sameKey(int height, int[] a, int[] b) {
+        if (a[0] == b[0] && a[1] == b[1]) return true;
+        return Arrays.equals(PermutationCache.forward(height, a[0], a[1]),
+                PermutationCache.forward(height, b[0], b[1]));
+    }
+
+    /**
+     * @return Les plages de la chronologie, triées.
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Clé d'une frame. Dans un intervalle entre deux plages, la clé de la plage précédente et celle
+     * de la suivante sont évaluées sur la frame ({@link VideoScrambler#keyScore}).
+     *
+     * @param frameIndex Numéro de la frame.
+     * @param scrambledFrame Frame chiffrée (utilisée seulement entre deux plages).
+     * @return {r, s}, ou null si la chronologie est vide.
+     */
+    public int[] keyFor(long frameIndex, Mat scrambledFrame) {
+        if (segments.isEmpty()) return null;
+
+        // Première plage qui finit à cette frame ou après
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segments.get(mid).lastFrame < frameIndex) low = mid + 1;
+            else high = mid;
+        }
+        Segment next = segments.get(low);
+        // Dans une plage, ou après la fin connue de la vidéo
+        if (low == 0 || next.firstFrame <= frameIndex || next.lastFrame < frameIndex) {
+            return new int[]{next.r, next.s};
+        }
+
+        Segment previous = segments.get(low - 1);
+        double previousScore = VideoScrambler.keyScore(scrambledFrame, previous.r, previous.s);
+        double nextScore = VideoScrambler.keyScore(scrambledFrame, next.r, next.s);
+        return (previousScore >= nextScore)
+                ? new int[]{previous.r, previous.s}
+                : new int[]{next.r, next.s};
+    }
+
+    /**
+     * Enregistre la chronologie (une plage par ligne : première frame, dernière frame, r, s).
+     *
+     * @param file Fichier de destination.
+     */
+    public void save(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# firstFrame lastFrame r s");
+            writer.newLine();
+            for (Segment segment : segments) {
+                writer.write(segment.firstFrame + " " + segment.lastFrame + " " + segment.r + " " + segment.s);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Relit une chronologie enregistrée avec {@link #save}.
+     *
+     * @param file Fichier à lire.
+     * @return La chronologie.
+     */
+    public static KeyTimeline load(Path file) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length != 4) throw new IOException("Invalid timeline line: " + line);
+                try {
+                    segments.add(new Segment(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                            Integer.parseInt(fields[2]), Integer.parseInt(fields[3])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid timeline line: " + line, e);
+                }
+            }
+        }
+        return new KeyTimeline(segments);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cryptanalyse hors ligne d'un fichier vidéo complet.
+ * La vidéo est lue une seule fois ; une frame sur {@code sampleInterval} est cassée, en parallèle
+ * sur un pool dédié, pendant que la lecture continue. Le résultat de chaque frame échantillonnée
+ * est ajouté immédiatement au fichier cache : un travail interrompu reprend là où il s'était
+ * arrêté (les frames déjà cassées sont seulement décodées). Le cache commence par une ligne
+ * d'en-tête décrivant l'analyse (vidéo, taille, nombre de frames, échantillonnage, méthode, métrique,
+ * espace des clés) : un cache d'une autre analyse est écarté et réécrit. Les clés obtenues sont
+ * regroupées en une {@link KeyTimeline}.
+ */
+public class KeyTimelineJob {
+
+    // En dessous de cette corrélation moyenne, la frame est trop pauvre (noire, unie) pour être fiable
+    private static final double MIN_SAMPLE_SCORE = 0.1;
+    // Début de la ligne d'en-tête du cache
+    private static final String CACHE_HEADER_PREFIX = "# key-cache v1";
+
+    /**
+     * Résultat du cassage d'une frame échantillonnée.
+     */
+    private static final class SampleResult {
+        final int r;
+        final int s;
+        final double score;
+
+        SampleResult(int r, int s, double score) {
+            this.r = r;
+            this.s = s;
+            this.score = score;
+        }
+    }
+
+    private final String videoPath;
+    private final Path cacheFile;
+    private final int sampleInterval;
+    private final VideoScrambler.CrackMethod method;
+    private final VideoScrambler.ScoringMetric metric;
+    private final KeySpace keySpace;
+    private final int threads;
+
+    // Frame échantillonnée -> résultat (cache relu + nouveaux cassages)
+    private final ConcurrentSkipListMap<Long, SampleResult> results = new ConcurrentSkipListMap<>();
+    private BufferedWriter cacheWriter;
+
+    /**
+     * @param videoPath Vidéo chiffrée à analyser.
+     * @param cacheFile Fichier des résultats par frame (créé, ou relu pour reprendre).
+     * @param sampleInterval Une frame cassée toutes les sampleInterval frames.
+     * @param method Méthode de cassage de chaque frame.
+     * @param metric Métrique de score du cassage (le score de confiance reste la corrélation de Pearson).
+     * @param keySpace Espace des clés à explorer.
+     * @param threads Nombre de threads de cassage.
+     */
+    public KeyTimelineJob(String videoPath, Path cacheFile, int sampleInterval,
+                          VideoScrambler.CrackMethod method, VideoScrambler.ScoringMetric metric,
+                          KeySpace keySpace, int threads) {
+        this.videoPath = videoPath;
+        this.cacheFile = cacheFile;
+        this.sampleInterval = Math.max(1, sampleInterval);
+        this.method = method;
+        this.metric = metric;
+        this.keySpace = keySpace;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Analyse la vidéo et construit la chronologie des clés.
+     *
+     * @return La chronologie (vide si aucune frame exploitable).
+     */
+    public KeyTimeline run() throws IOException {
+        VideoCapture capture = new VideoCapture();
+        if (!capture.open(videoPath)) {
+            throw new IOException("Impossible to open the input file: " + videoPath);
+        }
+
+        String header = cacheHeader(capture);
+        boolean cacheValid = loadCache(header);
+        int cached = results.size();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        // Frames clonées en attente de cassage : borne la mémoire si la lecture va plus vite
+        Semaphore pending = new Semaphore(2 * threads);
+        Phaser inFlight = new Phaser(1);
+        Mat frame = new Mat();
+        long frameIndex = 0;
+        int height = (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+
+        try {
+            if (cacheValid) {
+                cacheWriter = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } else {
+                cacheWriter = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8);
+                cacheWriter.write(header);
+                cacheWriter.newLine();
+                cacheWriter.flush();
+            }
+        } catch (IOException e) {
+            capture.release();
+            throw e;
+        }
+        try {
+            // grab() seul pour les frames non échantillonnées : pas de conversion vers une Mat
+            while (capture.grab()) {
+                long index = frameIndex++;
+                if (index % sampleInterval != 0 || results.containsKey(index)) continue;
+                if (!capture.retrieve(frame) || frame.empty()) continue;
+                height = frame.rows();
+
+                pending.acquire();
+                inFlight.register();
+                Mat sample = frame.clone();
+                pool.execute(() -> {
+                    try {
+                        crackSample(index, sample);
+                    } finally {
+                        sample.release();
+                        pending.release();
+                        inFlight.arriveAndDeregister();
+                    }
+                });
+            }
+            inFlight.arriveAndAwaitAdvance();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Key timeline analysis interrupted", e);
+        } finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                cacheWriter.close();
+            }
+            frame.release();
+            capture.release();
+        }
+
+        System.out.println("Analysed " + frameIndex + " frames: " + (results.size() - cached) +
+                " sampled frames cracked, " + cached + " read from cache");
+
+        SortedMap<Long, int[]> keys = new TreeMap<>();
+        for (Map.Entry<Long, SampleResult> entry : results.entrySet()) {
+            SampleResult result = entry.getValue();
+            if (result.score >= MIN_SAMPLE_SCORE) {
+                keys.put(entry.getKey(), new int[]{result.r, result.s});
+            }
+        }
+        return KeyTimeline.fromSamples(keys, frameIndex, height);
+    }
+
+    /**
+     * Casse une frame échantillonnée et ajoute le résultat au cache.
+     */
+    private void crackSample(long index, Mat sample) {
+        int[] key = VideoScrambler.crackKey(sample, method, metric, keySpace, CrackMonitor.NONE);
+        double score = VideoScrambler.keyScore(sample, key[0], key[1]);
+        results.put(index, new SampleResult(key[0], key[1], score));
+
+        synchronized (this) {
+            try {
+                cacheWriter.write(index + " " + key[0] + " " + key[1] + " " + score);
+                cacheWriter.newLine();
+                cacheWriter.flush();
+            } catch (IOException e) {
+                System.err.println("Could not write key cache: " + e.getMessage());
+            }
+        }
+        System.out.println("Frame " + index + ": R=" + key[0] + ", S=" + key[1] +
+                " (score " + String.format("%.3f", score) + ")");
+    }
+
+    /**
+     * En-tête du cache : tout paramètre qui change les clés trouvées pour une frame donnée.
+     */
+    private String cacheHeader(VideoCapture capture) {
+        return CACHE_HEADER_PREFIX
+                + " size=" + (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH)
+                + "x" + (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT)
+                + " frames=" + (long) capture.get(Videoio.CAP_PROP_FRAME_COUNT)
+                + " interval=" + sampleInterval
+                + " method=" + method
+                + " metric=" + metric
+                + " keys=" + keySpace
+                + " video=" + Path.of(videoPath).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Relit les résultats d'une analyse précédente (en-tête, puis une frame par ligne : numéro, r, s, score).
+     * Une dernière ligne tronquée (arrêt brutal) est ignorée. Un cache sans en-tête ou dont l'en-tête
+     * diffère (autre vidéo ou autres paramètres) n'est pas relu.
+     *
+     * @param header En-tête attendu.
+     * @return true si le cache existe et correspond à cette analyse (il est alors complété).
+     */
+    private boolean loadCache(String header) throws IOException {
+        if (!Files.exists(cacheFile)) return false;
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!header.equals(line)) {
+                System.out.println("Key cache " + cacheFile + " belongs to another analysis, starting over");
+                return false;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 4) continue;
+                try {
+                    results.put(Long.parseLong(fields[0]), new SampleResult(
+                            Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Double.parseDouble(fields[3])));
+                } catch (NumberFormatException e) {
+                    // Ligne incomplète
+                }
+            }
+        }
+        System.out.println("Key cache: " + results.size() + " frames already analysed");
+        return true;
+    }
+}
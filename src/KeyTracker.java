@@ -0,0 +1,216 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Suivi continu de la clé d'un flux chiffré.
+ * Après un premier cassage, une frame sur {@value #CHECK_INTERVAL} reçoit une vérification rapide
+ * de la clé courante : le critère de {@link VideoScrambler#keyScore}, limité à un échantillon de
+ * paires de lignes adjacentes. Le seuil d'alerte est appris sur les scores observés avec la bonne
+ * clé ; une recherche complète n'est relancée en arrière-plan que si le score reste sous ce seuil
+ * plusieurs vérifications de suite (changement de clé chez l'émetteur).
+ * Les frames sont vérifiées dans l'ordre, depuis un seul thread (étage d'écriture de la chaîne).
+ */
+public class KeyTracker {
+
+    /**
+     * Notifié quand une nouvelle clé a été trouvée par une recherche en arrière-plan.
+     */
+    @FunctionalInterface
+    public interface KeyListener {
+        void onKeyChanged(int r, int s);
+    }
+
+    // Nombre de frames observées avant de se fier à l'écart-type appris
+    private static final int WARMUP_FRAMES = 10;
+    // Seuil = moyenne - SIGMA_FACTOR écarts-types, plafonné à MAX_THRESHOLD_RATIO de la moyenne
+    private static final double SIGMA_FACTOR = 4.0;
+    private static final double MAX_THRESHOLD_RATIO = 0.6;
+    // Poids des nouvelles frames dans la moyenne glissante
+    private static final double SMOOTHING = 0.05;
+    // Vérifications consécutives sous le seuil avant de relancer une recherche
+    private static final int LOW_SCORE_FRAMES = 3;
+    // Une frame vérifiée sur CHECK_INTERVAL
+    private static final int CHECK_INTERVAL = 4;
+    // Paires de lignes adjacentes (de l'image déchiffrée) comparées à chaque vérification
+    private static final int SAMPLED_PAIRS = 64;
+
+    private final CrackService crackService;
+    private final KeyListener listener;
+
+    private int r;
+    private int s;
+    private boolean hasKey = false;
+
+    // Statistiques des scores obtenus avec la clé courante
+    private int samples = 0;
+    private double meanScore = 0;
+    private double varianceScore = 0;
+    private int lowScoreStreak = 0;
+    private boolean crackRunning = false;
+
+    // Compteur de frames et tampons de lignes, propres au thread de vérification
+    private long frameCount = 0;
+    private final Mat resizedRow = new Mat();
+    private final Mat greyRow = new Mat();
+    private final Mat floatRow = new Mat();
+    private final float[] rowA = new float[VideoScrambler.ANALYSIS_WIDTH];
+    private final float[] rowB = new float[VideoScrambler.ANALYSIS_WIDTH];
+
+    /**
+     * @param crackService Service partagé qui exécute les recherches en arrière-plan.
+     * @param listener Notifié (depuis le thread de recherche) à chaque nouvelle clé trouvée.
+     */
+    public KeyTracker(CrackService crackService, KeyListener listener) {
+        this.crackService = crackService;
+        this.listener = listener;
+    }
+
+    /**
+     * Fixe la clé courante (cassage initial ou saisie) et réinitialise le seuil appris.
+     */
+    public synchronized void setKey(int r, int s) {
+        this.r = r;
+        this.s = s;
+        this.hasKey = true;
+        this.samples = 0;
+        this.meanScore = 0;
+        this.varianceScore = 0;
+        this.lowScoreStreak = 0;
+    }
+
+    /**
+     * @return true si une clé a été fixée.
+     */
+    public synchronized boolean hasKey() {
+        return hasKey;
+    }
+
+    /**
+     * @return La clé courante {r, s}.
+     */
+    public synchronized int[] getKey() {
+        return new int[]{r, s};
+    }
+
+    /**
+     * Vérifie la clé courante sur une frame chiffrée (une frame sur {@value #CHECK_INTERVAL}).
+     * À appeler dans l'ordre des frames, depuis un seul thread : les tampons de lignes sont réutilisés
+     * et la série de scores bas compte des vérifications consécutives.
+     * La frame n'est pas conservée (une copie est faite si une recherche est lancée).
+     *
+     * @param scrambledFrame Frame chiffrée reçue.
+     */
+    public void onFrame(Mat scrambledFrame) {
+        if (frameCount++ % CHECK_INTERVAL != 0) return;
+
+        int currentR;
+        int currentS;
+        synchronized (this) {
+            if (!hasKey || crackRunning) return;
+            currentR = r;
+            currentS = s;
+        }
+
+        double score = sampledScore(scrambledFrame, currentR, currentS);
+
+        synchronized (this) {
+            // La clé a pu changer pendant le calcul : score obsolète
+            if (crackRunning || currentR != r || currentS != s) return;
+
+            if (score >= threshold()) {
+                lowScoreStreak = 0;
+                learn(score);
+                return;
+            }
+            if (++lowScoreStreak < LOW_SCORE_FRAMES) return;
+            crackRunning = true;
+        }
+
+        System.out.println("Key check failed (score " + String.format("%.3f", score) + "), searching new key...");
+        // Si une recherche est déjà en cours (bouton Crack), on attend son résultat
+        CrackJob job = crackService.submit(scrambledFrame, VideoScrambler.CrackMethod.EXHAUSTIVE, null);
+        job.result().whenComplete((key, error) -> {
+            if (key != null) {
+                setKey(key[0], key[1]);
+                listener.onKeyChanged(key[0], key[1]);
+            }
+            synchronized (this) {
+                crackRunning = false;
+            }
+        });
+    }
+
+    /**
+     * Corrélation moyenne d'un échantillon de paires de lignes adjacentes de l'image déchiffrée :
+     * seules les lignes des paires retenues sont réduites et converties, dans des tampons réutilisés.
+     */
+    private double sampledScore(Mat scrambledFrame, int r, int s) {
+        int h = scrambledFrame.rows();
+        if (h < 2) return 0;
+        int[] map = PermutationCache.forward(h, r, s);
+
+        int pairs = Math.min(SAMPLED_PAIRS, h - 1);
+        double totalCorrelation = 0;
+        for (int k = 0; k < pairs; k++) {
+            int i = (int) ((long) k * (h - 1) / pairs);
+            float invNormA = loadRow(scrambledFrame, map[i], rowA);
+            float invNormB = loadRow(scrambledFrame, map[i + 1], rowB);
+            totalCorrelation += RowKernels.INSTANCE.dot(rowA, rowB) * invNormA * invNormB;
+        }
+        return totalCorrelation / pairs;
+    }
+
+    /**
+     * Réduit une ligne à la largeur d'analyse, en niveaux de gris, et la centre (comme {@link AnalysisRows}).
+     *
+     * @return L'inverse de la norme de la ligne centrée (0 pour une ligne uniforme).
+     */
+    private float loadRow(Mat frame, int y, float[] row) {
+        Mat source = frame.row(y);
+        Imgproc.resize(source, resizedRow, new Size(row.length, 1));
+        source.release();
+
+        Mat grey = resizedRow;
+        if (resizedRow.channels() > 1) {
+            Imgproc.cvtColor(resizedRow, greyRow, Imgproc.COLOR_BGR2GRAY);
+            grey = greyRow;
+        }
+        grey.convertTo(floatRow, CvType.CV_32F);
+        floatRow.get(0, 0, row);
+
+        RowKernels kernels = RowKernels.INSTANCE;
+        float mean = kernels.sum(row) / row.length;
+        float sumSqDiff = kernels.centerAndSquare(row, mean);
+        return (sumSqDiff > 1e-6f) ? (float) (1.0 / Math.sqrt(sumSqDiff)) : 0f;
+    }
+
+    /**
+     * Seuil courant : avant d'avoir assez d'observations, la moitié de la moyenne (ou 0).
+     */
+    private double threshold() {
+        if (samples == 0) return Double.NEGATIVE_INFINITY;
+        if (samples < WARMUP_FRAMES) return 0.5 * meanScore;
+        double learned = meanScore - SIGMA_FACTOR * Math.sqrt(varianceScore);
+        return Math.min(learned, MAX_THRESHOLD_RATIO * meanScore);
+    }
+
+    /**
+     * Met à jour la moyenne et la variance des scores (moyenne exacte pendant l'apprentissage,
+     * puis moyenne glissante exponentielle pour suivre l'évolution du contenu).
+     */
+    private void learn(double score) {
+        samples++;
+        double weight = (samples < WARMUP_FRAMES) ? 1.0 / samples : SMOOTHING;
+        double delta = score - meanScore;
+        meanScore += weight * delta;
+        varianceScore = (1 - weight) * (varianceScore + weight * delta * delta);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramme de latences à seuils en puissances de 2 (nanosecondes), sans verrou ni allocation
+ * à l'enregistrement : on peut l'alimenter depuis plusieurs threads à chaque frame.
+ * Les centiles sont donnés par la borne haute de leur classe (précision d'un facteur 2 au plus).
+ */
+public class LatencyHistogram {
+
+    // Classe i : latences dans [2^(i-1), 2^i[ nanosecondes (classe 0 : 0 ns)
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Enregistre une mesure.
+     *
+     * @param nanos Latence en nanosecondes.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return Nombre de mesures.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return Latence moyenne en nanosecondes (0 sans mesure).
+     */
+    public double getMeanNanos() {
+        long n = count.get();
+        return (n == 0) ? 0 : (double) totalNanos.get() / n;
+    }
+
+    /**
+     * @return Latence maximale en nanosecondes.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Estime un centile.
+     *
+     * @param quantile Centile entre 0 et 1 (0.5 = médiane).
+     * @return Borne haute (en nanosecondes) de la classe contenant le centile, 0 sans mesure.
+     */
+    public long percentileNanos(double quantile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return (i == 0) ? 0 : Math.min(maxNanos.get(), (1L << i) - 1);
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Remet l'histogramme à zéro (les mesures concurrentes peuvent être partiellement perdues).
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * @return Résumé en millisecondes : moyenne, médiane, 99e centile et maximum.
+     */
+    @Override
+    public String toString() {
+        return String.format("mean %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                getMeanNanos() / 1e6, percentileNanos(0.5) / 1e6, percentileNanos(0.99) / 1e6, getMaxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Réserve de Mat OpenCV réutilisables, classées par taille et type.
+ * La mémoire native d'une Mat n'est rendue qu'à la finalisation par le GC : dans la boucle vidéo,
+ * on emprunte donc les Mat avec {@link #acquire} et on les rend explicitement avec {@link #release}.
+ * En régime établi, aucune nouvelle mémoire native n'est allouée.
+ */
+public class MatPool {
+
+    // Nombre maximal de Mat conservées par (taille, type) ; au-delà la mémoire est libérée
+    private static final int MAX_PER_SHAPE = 16;
+
+    private final Map<Long, ArrayDeque<Mat>> pooled = new HashMap<>();
+    // Mat empruntées -> taille en octets au moment de l'emprunt (clé : objet natif)
+    private final Map<Long, Long> leased = new HashMap<>();
+    // Objets natifs des Mat rangées dans la réserve (un second retour est ignoré)
+    private final Set<Long> pooledIds = new HashSet<>();
+
+    private long liveBytes = 0;
+    private long pooledBytes = 0;
+    private long allocations = 0;
+
+    /**
+     * Emprunte une Mat de la taille et du type demandés (contenu indéfini).
+     *
+     * @param rows Nombre de lignes.
+     * @param cols Nombre de colonnes.
+     * @param type Type OpenCV (ex. CvType.CV_8UC3).
+     * @return Une Mat à rendre avec {@link #release}.
+     */
+    public synchronized Mat acquire(int rows, int cols, int type) {
+        ArrayDeque<Mat> free = pooled.get(shapeKey(rows, cols, type));
+        Mat mat = (free != null) ? free.pollFirst() : null;
+        long bytes = byteSize(rows, cols, type);
+
+        if (mat != null) {
+            pooledIds.remove(mat.nativeObj);
+            pooledBytes -= bytes;
+        } else {
+            mat = new Mat(rows, cols, type);
+            allocations++;
+        }
+        leased.put(mat.nativeObj, bytes);
+        liveBytes += bytes;
+        return mat;
+    }
+
+    /**
+     * Rend une Mat empruntée. Sa taille a pu changer entre-temps (lecture vidéo, create...) :
+     * elle est rangée selon sa taille actuelle.
+     *
+     * Une Mat déjà rendue (et pas encore réempruntée) est ignorée : un double retour depuis un chemin
+     * d'erreur ne libère pas une Mat de la réserve.
+     *
+     * @param mat Mat empruntée via {@link #acquire} (les autres sont simplement libérées).
+     */
+    public synchronized void release(Mat mat) {
+        if (mat == null || pooledIds.contains(mat.nativeObj)) return;
+
+        Long leasedBytes = leased.remove(mat.nativeObj);
+        if (leasedBytes == null) {
+            // Mat étrangère à la réserve : libération immédiate de la mémoire native
+            mat.release();
+            return;
+        }
+        liveBytes -= leasedBytes;
+
+        if (mat.empty()) {
+            mat.release();
+            return;
+        }
+
+        ArrayDeque<Mat> free = pooled.computeIfAbsent(shapeKey(mat.rows(), mat.cols(), mat.type()),
+                key -> new ArrayDeque<>());
+        if (free.size() >= MAX_PER_SHAPE) {
+            mat.release();
+            return;
+        }
+        free.addFirst(mat);
+        pooledIds.add(mat.nativeObj);
+        pooledBytes += byteSize(mat.rows(), mat.cols(), mat.type());
+    }
+
+    /**
+     * Libère la mémoire native de toutes les Mat conservées dans la réserve.
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Mat> free : pooled.values()) {
+            for (Mat mat : free) mat.release();
+        }
+        pooled.clear();
+        pooledIds.clear();
+        pooledBytes = 0;
+    }
+
+    /**
+     * @return Octets des Mat actuellement empruntées.
+     */
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return Octets des Mat en attente de réutilisation dans la réserve.
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * @return Nombre de Mat réellement allouées depuis la création de la réserve.
+     */
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MatPool[live=" + liveBytes + " B, pooled=" + pooledBytes + " B, allocations=" + allocations + "]";
+    }
+
+    private static long shapeKey(int rows, int cols, int type) {
+        return ((long) rows << 40) | ((long) cols << 16) | (type & 0xFFFF);
+    }
+
+    private static long byteSize(int rows, int cols, int type) {
+        return (long) rows * cols * CvType.ELEM_SIZE(type);
+    }
+}
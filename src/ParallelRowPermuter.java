@@ -0,0 +1,110 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Permutation des lignes d'une seule frame sur plusieurs cœurs, pour les très grandes images
+ * (4K, 8K) : avec un seul flux, il n'y a pas de parallélisme entre frames, et un seul thread ne
+ * suffit pas à saturer la bande passante mémoire.
+ * Les lignes de destination sont découpées en tranches traitées sur un pool fork-join dédié ;
+ * chaque tranche copie ses lignes directement de la source vers la destination (une copie native
+ * par suite de lignes consécutives), en une seule passe et sans tampon intermédiaire : aucune
+ * mémoire n'est réservée en plus des deux images. Sous le seuil, {@link VideoScrambler} garde
+ * son chemin mono-thread, sans le coût de synchronisation du pool.
+ */
+public final class ParallelRowPermuter {
+
+    // Taille visée d'une tranche de lignes (assez grande pour amortir la tâche et les en-têtes de Mat)
+    private static final int CHUNK_BYTES = 1024 * 1024;
+
+    // Taille de frame à partir de laquelle une frame est découpée (0 = toujours, Long.MAX_VALUE = jamais).
+    // 8 Mo : une frame 4K en niveaux de gris, mais pas une frame 1080p couleur
+    private static volatile long thresholdBytes = 8L * 1024 * 1024;
+
+    private ParallelRowPermuter() {
+    }
+
+    /**
+     * Pool créé au premier découpage (les petites frames ne démarrent aucun thread).
+     */
+    private static final class Pool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param frameBytes Taille d'une frame en octets.
+     * @return true si une frame de cette taille est permutée en parallèle.
+     */
+    public static boolean shouldSplit(long frameBytes) {
+        return frameBytes >= thresholdBytes;
+    }
+
+    /**
+     * Définit le seuil de découpage.
+     *
+     * @param frameBytes Taille de frame minimale, en octets (0 = toujours, Long.MAX_VALUE = jamais).
+     */
+    public static void setThreshold(long frameBytes) {
+        thresholdBytes = Math.max(0, frameBytes);
+    }
+
+    /**
+     * @return Taille de frame minimale pour un découpage, en octets.
+     */
+    public static long getThreshold() {
+        return thresholdBytes;
+    }
+
+    /**
+     * Destination[i] reçoit Source[rowSource[i]], tranches de lignes réparties sur le pool.
+     *
+     * @param src Image source.
+     * @param dst Image destination de même taille et type, distincte de la source.
+     * @param rowSource Ligne source de chaque ligne destination.
+     */
+    static void permute(Mat src, Mat dst, int[] rowSource) {
+        int height = src.rows();
+        int rowBytes = (int) Math.max(1, src.cols() * src.elemSize());
+        int chunkRows = Math.max(1, CHUNK_BYTES / rowBytes);
+        int chunks = (height + chunkRows - 1) / chunkRows;
+
+        // Tranches de destination disjointes : aucune synchronisation entre tâches
+        Pool.INSTANCE.submit(() -> IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int start = chunk * chunkRows;
+            copyRows(src, dst, rowSource, start, Math.min(height, start + chunkRows));
+        })).join();
+    }
+
+    /**
+     * Destination[i] reçoit Source[rowSource[i]] pour les lignes {@code from <= i < to}, directement :
+     * une copie native par suite de lignes source consécutives.
+     *
+     * @param src Image source.
+     * @param dst Image destination de même taille et type, distincte de la source.
+     * @param rowSource Ligne source de chaque ligne destination.
+     * @param from Première ligne de destination.
+     * @param to Fin (exclue) des lignes de destination.
+     */
+    static void copyRows(Mat src, Mat dst, int[] rowSource, int from, int to) {
+        int i = from;
+        while (i < to) {
+            int first = rowSource[i];
+            int run = 1;
+            while (i + run < to && rowSource[i + run] == first + run) run++;
+
+            Mat source = src.rowRange(first, first + run);
+            Mat target = dst.rowRange(i, i + run);
+            source.copyTo(target);
+            source.release();
+            target.release();
+            i += run;
+        }
+    }
+}
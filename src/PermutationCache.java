@@ -0,0 +1,169 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU borné des cartes de permutation (directe et inverse) par triplet (hauteur, r, s).
+ * La clé change rarement d'une frame à l'autre : la dernière entrée utilisée est conservée
+ * à part pour qu'un accès répété ne fasse ni calcul ni allocation.
+ * Les tableaux renvoyés sont partagés et ne doivent jamais être modifiés par l'appelant.
+ */
+public final class PermutationCache {
+
+    // Nombre maximal de cartes conservées (une carte 4K pèse environ 17 Ko par sens)
+    private static final int MAX_ENTRIES = 32;
+
+    private static final Map<Long, Entry> ENTRIES = new LinkedHashMap<Long, Entry>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // Dernière entrée servie : chemin rapide sans verrou ni allocation
+    private static volatile Entry lastEntry;
+    // Dernière carte de changement de clé servie (une archive se rechiffre avec un seul couple de clés)
+    private static volatile RekeyEntry lastRekey;
+
+    private PermutationCache() {
+    }
+
+    /**
+     * Cartes de permutation associées à une hauteur et une clé.
+     */
+    public static final class Entry {
+        private final int height;
+        private final int r;
+        private final int s;
+        private final int[] forward;
+        private final int[] inverse;
+
+        private Entry(int height, int r, int s) {
+            this.height = height;
+            this.r = r;
+            this.s = s;
+            this.forward = new int[height];
+            this.inverse = new int[height];
+
+            VideoScrambler.fillPermutationMap(forward, height, r, s);
+            for (int i = 0; i < height; i++) {
+                inverse[forward[i]] = i;
+            }
+        }
+
+        private boolean matches(int height, int r, int s) {
+            return this.height == height && this.r == r && this.s == s;
+        }
+
+        /**
+         * @return La carte directe : tab[i] est la nouvelle position de la ligne i.
+         */
+        public int[] forward() {
+            return forward;
+        }
+
+        /**
+         * @return La carte inverse : tab[j] est la ligne d'origine placée en position j.
+         */
+        public int[] inverse() {
+            return inverse;
+        }
+    }
+
+    /**
+     * Renvoie (en la calculant si besoin) l'entrée du cache pour la clé (r, s).
+     *
+     * @param height Hauteur de l'image.
+     * @param r Clé R (16 bits au plus).
+     * @param s Clé S (16 bits au plus).
+     * @return Les cartes directe et inverse correspondantes.
+     */
+    public static Entry get(int height, int r, int s) {
+        Entry last = lastEntry;
+        if (last != null && last.matches(height, r, s)) {
+            return last;
+        }
+
+        long key = ((long) height << 32) | ((long) (r & 0xFFFF) << 16) | (s & 0xFFFF);
+        Entry entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.get(key);
+            if (entry == null) {
+                entry = new Entry(height, r, s);
+                ENTRIES.put(key, entry);
+            }
+        }
+        lastEntry = entry;
+        return entry;
+    }
+
+    /**
+     * @see #get(int, int, int)
+     */
+    public static int[] forward(int height, int r, int s) {
+        return get(height, r, s).forward();
+    }
+
+    /**
+     * @see #get(int, int, int)
+     */
+    public static int[] inverse(int height, int r, int s) {
+        return get(height, r, s).inverse();
+    }
+
+    /**
+     * Carte de changement de clé : déchiffrement avec (r1, s1) suivi du chiffrement avec (r2, s2).
+     */
+    private static final class RekeyEntry {
+        private final int height;
+        private final int r1, s1, r2, s2;
+        private final int[] rowSource;
+
+        private RekeyEntry(int height, int r1, int s1, int r2, int s2) {
+            this.height = height;
+            this.r1 = r1;
+            this.s1 = s1;
+            this.r2 = r2;
+            this.s2 = s2;
+
+            // Chiffré 2 [j] = Clair [inverse2[j]] = Chiffré 1 [forward1[inverse2[j]]]
+            int[] oldForward = forward(height, r1, s1);
+            int[] newInverse = inverse(height, r2, s2);
+            this.rowSource = new int[height];
+            for (int j = 0; j < height; j++) {
+                rowSource[j] = oldForward[newInverse[j]];
+            }
+        }
+
+        private boolean matches(int height, int r1, int s1, int r2, int s2) {
+            return this.height == height && this.r1 == r1 && this.s1 == s1 && this.r2 == r2 && this.s2 == s2;
+        }
+    }
+
+    /**
+     * Renvoie la composée des deux permutations d'un changement de clé : la ligne j de l'image
+     * chiffrée avec (r2, s2) est la ligne tab[j] de l'image chiffrée avec (r1, s1).
+     * Seule la dernière carte est conservée.
+     *
+     * @param height Hauteur de l'image.
+     * @param r1 Ancienne clé R.
+     * @param s1 Ancienne clé S.
+     * @param r2 Nouvelle clé R.
+     * @param s2 Nouvelle clé S.
+     * @return Ligne source de chaque ligne destination.
+     */
+    public static int[] rekey(int height, int r1, int s1, int r2, int s2) {
+        RekeyEntry last = lastRekey;
+        if (last != null && last.matches(height, r1, s1, r2, s2)) {
+            return last.rowSource;
+        }
+        RekeyEntry entry = new RekeyEntry(height, r1, s1, r2, s2);
+        lastRekey = entry;
+        return entry.rowSource;
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Mesures de la chaîne vidéo de l'IHM : latence de chaque étage (capture, traitement,
+ * stéganographie, encodage, affichage), débit en entrée et en sortie, frames ignorées,
+ * profondeur des files, durée et débit des recherches de clé.
+ * L'enregistrement ne prend pas de verrou (histogrammes {@link LatencyHistogram}) ; les mesures
+ * sont publiées par JMX, ajoutées à un fichier CSV ou résumées en quelques lignes (incrustation).
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    /** Nom JMX sous lequel les mesures sont publiées. */
+    public static final String OBJECT_NAME = "VideoScrambleApp:type=PipelineMetrics";
+
+    /**
+     * Étages mesurés.
+     */
+    public enum Stage {
+        /** Lecture d'une frame (caméra, fichier ou Y4M). */
+        CAPTURE,
+        /** Permutation des lignes (processImage). */
+        PROCESS,
+        /** Lecture de la clé cachée (au chiffrement, elle est écrite pendant la permutation : comptée dans PROCESS). */
+        STEGO,
+        /** Encodage d'une frame (thread d'enregistrement). */
+        WRITE,
+        /** Conversion d'une frame pour l'affichage JavaFX. */
+        DISPLAY;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Débit d'un compteur sur la dernière fenêtre d'une seconde écoulée.
+     */
+    private static final class RateMeter {
+        private static final long WINDOW_NANOS = 1_000_000_000L;
+
+        private long count = 0;
+        private long windowStart = System.nanoTime();
+        private long windowCount = 0;
+        private double rate = 0;
+
+        synchronized void mark() {
+            count++;
+            roll(System.nanoTime());
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized double rate() {
+            roll(System.nanoTime());
+            return rate;
+        }
+
+        synchronized void reset() {
+            count = 0;
+            windowCount = 0;
+            windowStart = System.nanoTime();
+            rate = 0;
+        }
+
+        private void roll(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed < WINDOW_NANOS) return;
+            rate = (count - windowCount) * 1e9 / elapsed;
+            windowStart = now;
+            windowCount = count;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final RateMeter framesIn = new RateMeter();
+    private final RateMeter framesOut = new RateMeter();
+
+    // Recherches de clé abouties
+    private final LatencyHistogram crackLatency = new LatencyHistogram();
+    private volatile long lastCrackNanos = 0;
+    private volatile long lastCrackKeys = 0;
+
+    // Chaîne en cours (null entre deux acquisitions), pour les files et frames ignorées
+    private volatile FramePipeline pipeline;
+    private volatile RecordingSink recorder;
+    private volatile FrameDisplay[] displays = new FrameDisplay[0];
+
+    public PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @return L'histogramme d'un étage, à alimenter directement (voir {@link RecordingSink#setWriteLatency}).
+     */
+    public LatencyHistogram stage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Enregistre la durée d'un passage dans un étage.
+     *
+     * @param stage Étage mesuré.
+     * @param nanos Durée en nanosecondes.
+     */
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    /**
+     * Une frame a été lue.
+     */
+    public void frameIn() {
+        framesIn.mark();
+    }
+
+    /**
+     * Une frame est sortie de la chaîne (affichée et confiée à l'enregistrement).
+     */
+    public void frameOut() {
+        framesOut.mark();
+    }
+
+    /**
+     * Enregistre une recherche de clé aboutie.
+     *
+     * @param nanos Durée de la recherche.
+     * @param keysEvaluated Nombre de clés évaluées.
+     */
+    public void recordCrack(long nanos, long keysEvaluated) {
+        crackLatency.record(nanos);
+        lastCrackNanos = nanos;
+        lastCrackKeys = keysEvaluated;
+    }
+
+    /**
+     * Associe les mesures à la chaîne en cours, dont les files et frames ignorées sont lues à la demande.
+     *
+     * @param pipeline Chaîne de traitement, ou null.
+     * @param recorder Enregistrement, ou null.
+     * @param displays Vues alimentées par la chaîne.
+     */
+    public void attach(FramePipeline pipeline, RecordingSink recorder, FrameDisplay... displays) {
+        this.pipeline = pipeline;
+        this.recorder = recorder;
+        this.displays = displays.clone();
+    }
+
+    /**
+     * Détache la chaîne arrêtée (les histogrammes sont conservés).
+     */
+    public void detach() {
+        this.pipeline = null;
+        this.recorder = null;
+    }
+
+    /**
+     * Publie les mesures sur le serveur JMX de la plateforme.
+     *
+     * @return true si l'enregistrement a réussi.
+     */
+    public boolean registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            return true;
+        } catch (JMException e) {
+            System.err.println("Could not publish pipeline metrics over JMX: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Retire les mesures du serveur JMX.
+     */
+    public void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException e) {
+            // Déjà retiré
+        }
+    }
+
+    @Override
+    public long getFramesIn() {
+        return framesIn.count();
+    }
+
+    @Override
+    public long getFramesOut() {
+        return framesOut.count();
+    }
+
+    @Override
+    public double getInputFps() {
+        return framesIn.rate();
+    }
+
+    @Override
+    public double getOutputFps() {
+        return framesOut.rate();
+    }
+
+    @Override
+    public long getCaptureDroppedFrames() {
+        FramePipeline pipeline = this.pipeline;
+        return (pipeline != null) ? pipeline.getDroppedFrames() : 0;
+    }
+
+    @Override
+    public long getRecorderDroppedFrames() {
+        RecordingSink recorder = this.recorder;
+        return (recorder != null) ? recorder.getDroppedFrames() : 0;
+    }
+
+    @Override
+    public long getDisplayDroppedFrames() {
+        long dropped = 0;
+        for (FrameDisplay display : displays) dropped += display.getDroppedFrames();
+        return dropped;
+    }
+
+    @Override
+    public int getPipelineQueueDepth() {
+        FramePipeline pipeline = this.pipeline;
+        return (pipeline != null) ? pipeline.getQueueDepth() : 0;
+    }
+
+    @Override
+    public int getRecorderQueueDepth() {
+        RecordingSink recorder = this.recorder;
+        return (recorder != null) ? recorder.getQueueDepth() : 0;
+    }
+
+    @Override
+    public double getCaptureMeanMillis() {
+        return stages.get(Stage.CAPTURE).getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getCaptureP99Millis() {
+        return stages.get(Stage.CAPTURE).percentileNanos(0.99) / 1e6;
+    }
+
+    @Override
+    public double getProcessMeanMillis() {
+        return stages.get(Stage.PROCESS).getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getProcessP99Millis() {
+        return stages.get(Stage.PROCESS).percentileNanos(0.99) / 1e6;
+    }
+
+    @Override
+    public double getStegoMeanMillis() {
+        return stages.get(Stage.STEGO).getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getStegoP99Millis() {
+        return stages.get(Stage.STEGO).percentileNanos(0.99) / 1e6;
+    }
+
+    @Override
+    public double getWriteMeanMillis() {
+        return stages.get(Stage.WRITE).getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getWriteP99Millis() {
+        return stages.get(Stage.WRITE).percentileNanos(0.99) / 1e6;
+    }
+
+    @Override
+    public double getDisplayMeanMillis() {
+        return stages.get(Stage.DISPLAY).getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getDisplayP99Millis() {
+        return stages.get(Stage.DISPLAY).percentileNanos(0.99) / 1e6;
+    }
+
+    @Override
+    public long getCrackCount() {
+        return crackLatency.getCount();
+    }
+
+    @Override
+    public double getLastCrackMillis() {
+        return lastCrackNanos / 1e6;
+    }
+
+    @Override
+    public double getLastCrackKeysPerSecond() {
+        long nanos = lastCrackNanos;
+        return (nanos > 0) ? lastCrackKeys * 1e9 / nanos : 0.0;
+    }
+
+    @Override
+    public String[] getSummary() {
+        Stage[] all = Stage.values();
+        String[] lines = new String[all.length + 2];
+        lines[0] = String.format(Locale.ROOT, "frames: %d in (%.1f fps), %d out (%.1f fps), dropped %d capture / %d recorder / %d display, queues %d pipeline / %d recorder",
+                getFramesIn(), getInputFps(), getFramesOut(), getOutputFps(),
+                getCaptureDroppedFrames(), getRecorderDroppedFrames(), getDisplayDroppedFrames(),
+                getPipelineQueueDepth(), getRecorderQueueDepth());
+        for (int i = 0; i < all.length; i++) {
+            LatencyHistogram histogram = stages.get(all[i]);
+            lines[i + 1] = all[i].label() + ": " + histogram.getCount() + " samples, " + histogram;
+        }
+        lines[all.length + 1] = String.format(Locale.ROOT, "crack: %d searches, last %.0f ms (%.0f keys/s), %s",
+                getCrackCount(), getLastCrackMillis(), getLastCrackKeysPerSecond(), crackLatency);
+        return lines;
+    }
+
+    /**
+     * Résumé court pour l'incrustation sur la vue traitée : débit, frames ignorées et files,
+     * puis latence moyenne de chaque étage.
+     *
+     * @return Lignes à afficher.
+     */
+    public String[] overlayLines() {
+        StringBuilder latencies = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            if (latencies.length() > 0) latencies.append("  ");
+            latencies.append(String.format(Locale.ROOT, "%s %.1f", stage.label(), stages.get(stage).getMeanNanos() / 1e6));
+        }
+        return new String[]{
+                String.format(Locale.ROOT, "in %.1f fps  out %.1f fps  dropped %d/%d/%d  queues %d/%d",
+                        getInputFps(), getOutputFps(),
+                        getCaptureDroppedFrames(), getRecorderDroppedFrames(), getDisplayDroppedFrames(),
+                        getPipelineQueueDepth(), getRecorderQueueDepth()),
+                latencies.append(" ms").toString()
+        };
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : stages.values()) histogram.reset();
+        framesIn.reset();
+        framesOut.reset();
+        crackLatency.reset();
+        lastCrackNanos = 0;
+        lastCrackKeys = 0;
+    }
+
+    @Override
+    public void dumpCsv(String path) throws IOException {
+        appendCsv(Paths.get(path));
+    }
+
+    /**
+     * Ajoute une ligne de mesures à un fichier CSV (créé avec son en-tête si besoin).
+     * Latences en millisecondes : moyenne, médiane, 99e centile et maximum de chaque étage.
+     *
+     * @param path Chemin du fichier.
+     */
+    public synchronized void appendCsv(Path path) throws IOException {
+        boolean header = !Files.exists(path) || Files.size(path) == 0;
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) {
+                out.write("time,frames_in,frames_out,fps_in,fps_out,dropped_capture,dropped_recorder,dropped_display,"
+                        + "queue_pipeline,queue_recorder");
+                for (Stage stage : Stage.values()) {
+                    String prefix = "," + stage.label();
+                    out.write(prefix + "_count" + prefix + "_mean_ms" + prefix + "_p50_ms" + prefix + "_p99_ms" + prefix + "_max_ms");
+                }
+                out.write(",crack_count,last_crack_ms,last_crack_keys_per_s");
+                out.newLine();
+            }
+
+            StringBuilder row = new StringBuilder();
+            row.append(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                    .append(',').append(getFramesIn())
+                    .append(',').append(getFramesOut())
+                    .append(String.format(Locale.ROOT, ",%.2f,%.2f", getInputFps(), getOutputFps()))
+                    .append(',').append(getCaptureDroppedFrames())
+                    .append(',').append(getRecorderDroppedFrames())
+                    .append(',').append(getDisplayDroppedFrames())
+                    .append(',').append(getPipelineQueueDepth())
+                    .append(',').append(getRecorderQueueDepth());
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = stages.get(stage);
+                row.append(',').append(histogram.getCount())
+                        .append(String.format(Locale.ROOT, ",%.3f,%.3f,%.3f,%.3f",
+                                histogram.getMeanNanos() / 1e6, histogram.percentileNanos(0.5) / 1e6,
+                                histogram.percentileNanos(0.99) / 1e6, histogram.getMaxNanos() / 1e6));
+            }
+            row.append(',').append(getCrackCount())
+                    .append(String.format(Locale.ROOT, ",%.1f,%.0f", getLastCrackMillis(), getLastCrackKeysPerSecond()));
+            out.write(row.toString());
+            out.newLine();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.io.IOException;
+
+/**
+ * Interface JMX (MBean standard) des mesures de la chaîne vidéo ({@link PipelineMetrics}),
+ * consultable par exemple avec JConsole ou VisualVM. Latences en millisecondes.
+ */
+public interface PipelineMetricsMBean {
+
+    long getFramesIn();
+
+    long getFramesOut();
+
+    double getInputFps();
+
+    double getOutputFps();
+
+    /** Frames ignorées à la capture (chaîne pleine). */
+    long getCaptureDroppedFrames();
+
+    /** Frames ignorées par la file d'encodage. */
+    long getRecorderDroppedFrames();
+
+    /** Frames non affichées (thread JavaFX en retard), toutes vues confondues. */
+    long getDisplayDroppedFrames();
+
+    /** Frames lues mais pas encore écrites. */
+    int getPipelineQueueDepth();
+
+    /** Frames en attente d'encodage. */
+    int getRecorderQueueDepth();
+
+    double getCaptureMeanMillis();
+
+    double getCaptureP99Millis();
+
+    double getProcessMeanMillis();
+
+    double getProcessP99Millis();
+
+    double getStegoMeanMillis();
+
+    double getStegoP99Millis();
+
+    double getWriteMeanMillis();
+
+    double getWriteP99Millis();
+
+    double getDisplayMeanMillis();
+
+    double getDisplayP99Millis();
+
+    long getCrackCount();
+
+    double getLastCrackMillis();
+
+    double getLastCrackKeysPerSecond();
+
+    /** Latences et compteurs sous forme lisible, une ligne par étage. */
+    String[] getSummary();
+
+    /** Remet les histogrammes et compteurs à zéro. */
+    void reset();
+
+    /**
+     * Ajoute une ligne de mesures à un fichier CSV (en-tête écrit si le fichier est vide).
+     *
+     * @param path Chemin du fichier.
+     */
+    void dumpCsv(String path) throws IOException;
+}
@@ -0,0 +1,355 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Enregistrement vidéo asynchrone : les frames sont encodées par un thread dédié, alimenté par
+ * une file bornée. L'étage d'écriture de la chaîne ne fait que déposer la frame ; la latence de
+ * capture ne dépend donc plus de la vitesse de l'encodeur. Quand la file est pleine, la frame est
+ * ignorée (DROP, caméra) ou le dépôt attend une place (BLOCK, fichier).
+ * L'enregistrement peut être découpé en plusieurs fichiers, par taille ou par durée.
+ */
+public class RecordingSink {
+
+    /**
+     * Codecs proposés. Seuls les codecs sans perte conservent exactement les lignes
+     * (indispensable pour déchiffrer ou relire la clé cachée ensuite).
+     */
+    public enum Codec {
+        /** FFmpeg FFV1, sans perte. */
+        FFV1('F', 'F', 'V', '1'),
+        /** HuffYUV, sans perte, plus rapide à encoder mais fichiers plus gros. */
+        HFYU('H', 'F', 'Y', 'U'),
+        /** Motion JPEG, avec perte (aperçu uniquement). */
+        MJPG('M', 'J', 'P', 'G');
+
+        private final char[] fourcc;
+
+        Codec(char c1, char c2, char c3, char c4) {
+            this.fourcc = new char[]{c1, c2, c3, c4};
+        }
+
+        public int fourcc() {
+            return VideoWriter.fourcc(fourcc[0], fourcc[1], fourcc[2], fourcc[3]);
+        }
+    }
+
+    /**
+     * Conteneurs proposés. Y4M n'utilise pas de codec : les frames sont stockées brutes (YUV 4:4:4),
+     * par projection en mémoire ({@link Y4mWriter}).
+     */
+    public enum Container {
+        AVI(".avi"),
+        MKV(".mkv"),
+        Y4M(".y4m");
+
+        private final String extension;
+
+        Container(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    // Vérification de la taille du fichier courant toutes les SIZE_CHECK_INTERVAL frames
+    private static final int SIZE_CHECK_INTERVAL = 30;
+
+    private final String basePath;
+    private final Codec codec;
+    private final Container container;
+    private final double fps;
+    private final Size frameSize;
+    private final FramePipeline.BackpressurePolicy policy;
+    private final BlockingQueue<Mat> queue;
+
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong writtenFrames = new AtomicLong();
+
+    // Reçoit les frames écrites ou ignorées, par exemple pour les rendre à une MatPool
+    private volatile Consumer<Mat> frameRecycler = Mat::release;
+    // Y4M : recopie de la clé cachée dans les plans (voir Y4mWriter#write)
+    private volatile boolean keyCarrier = false;
+    // Durée d'encodage de chaque frame, null pour ne rien mesurer
+    private volatile LatencyHistogram writeLatency;
+
+    // Découpage (0 = désactivé)
+    private long maxSegmentBytes = 0;
+    private long maxSegmentFrames = 0;
+
+    // État de l'encodeur (thread d'encodage uniquement) : un seul des deux écrivains est ouvert
+    private VideoWriter writer;
+    private Y4mWriter y4mWriter;
+    private String currentFile;
+    private int segmentIndex = 0;
+    private long segmentFrames = 0;
+
+    private Thread encoderThread;
+    private volatile boolean closing = false;
+
+    /**
+     * @param basePath Chemin du fichier sans extension (un numéro est ajouté en cas de découpage).
+     * @param codec Codec d'encodage.
+     * @param container Conteneur (détermine l'extension).
+     * @param fps Cadence de la vidéo.
+     * @param frameSize Taille des frames.
+     * @param capacity Nombre maximal de frames en attente d'encodage.
+     * @param policy Comportement quand la file est pleine.
+     */
+    public RecordingSink(String basePath, Codec codec, Container container, double fps, Size frameSize,
+                         int capacity, FramePipeline.BackpressurePolicy policy) {
+        this.basePath = basePath;
+        this.codec = codec;
+        this.container = container;
+        this.fps = fps;
+        this.frameSize = frameSize;
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Active le découpage en plusieurs fichiers (à appeler avant {@link #start}).
+     *
+     * @param maxBytes Taille maximale d'un fichier en octets (0 = illimitée).
+     * @param maxSeconds Durée maximale d'un fichier en secondes (0 = illimitée).
+     */
+    public void setRollover(long maxBytes, double maxSeconds) {
+        this.maxSegmentBytes = Math.max(0, maxBytes);
+        this.maxSegmentFrames = (maxSeconds > 0) ? Math.max(1, Math.round(maxSeconds * fps)) : 0;
+    }
+
+    /**
+     * Définit qui récupère les frames après écriture (ou quand elles sont ignorées).
+     *
+     * @param frameRecycler Action appelée sur chaque Mat déposée.
+     */
+    public void setFrameRecycler(Consumer<Mat> frameRecycler) {
+        this.frameRecycler = frameRecycler;
+    }
+
+    /**
+     * Conteneur Y4M : recopie la clé cachée dans le pixel (0,0) de chaque frame directement dans les
+     * plans, pour qu'elle ne soit pas altérée par la conversion en YUV. Sans effet pour les autres conteneurs.
+     *
+     * @param keyCarrier true si les frames déposées portent une clé cachée.
+     */
+    public void setKeyCarrier(boolean keyCarrier) {
+        this.keyCarrier = keyCarrier;
+    }
+
+    /**
+     * @param writeLatency Reçoit la durée d'écriture de chaque frame (encodage compris), ou null.
+     */
+    public void setWriteLatency(LatencyHistogram writeLatency) {
+        this.writeLatency = writeLatency;
+    }
+
+    /**
+     * Ouvre le premier fichier et démarre le thread d'encodage.
+     *
+     * @return false si le fichier n'a pas pu être créé.
+     */
+    public boolean start() {
+        if (!openSegment()) return false;
+        encoderThread = new Thread(this::encodeLoop, "recording-encoder");
+        encoderThread.setDaemon(true);
+        encoderThread.start();
+        return true;
+    }
+
+    /**
+     * Dépose une frame à encoder. La frame appartient ensuite à l'enregistrement
+     * et sera transmise au recycleur une fois écrite ou ignorée. En mode BLOCK, l'attente d'une place
+     * cesse si l'enregistrement s'arrête (fermeture, ou fin anormale du thread d'encodage).
+     *
+     * @param frame Frame à enregistrer.
+     */
+    public void submit(Mat frame) {
+        if (closing) {
+            frameRecycler.accept(frame);
+            return;
+        }
+        if (policy == FramePipeline.BackpressurePolicy.DROP) {
+            if (!queue.offer(frame)) {
+                droppedFrames.incrementAndGet();
+                frameRecycler.accept(frame);
+            }
+            return;
+        }
+        try {
+            while (!queue.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                if (closing) {
+                    frameRecycler.accept(frame);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            frameRecycler.accept(frame);
+        }
+    }
+
+    /**
+     * Encode les frames encore en attente, puis ferme le fichier courant.
+     */
+    public void close() {
+        closing = true;
+        if (encoderThread != null) {
+            try {
+                encoderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Frames déposées après l'arrêt du thread
+        Mat frame;
+        while ((frame = queue.poll()) != null) {
+            frameRecycler.accept(frame);
+        }
+        closeWriters();
+    }
+
+    /**
+     * @return Nombre de frames en attente d'encodage.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return Nombre de frames ignorées faute de place (mode DROP).
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return Nombre de frames encodées.
+     */
+    public long getWrittenFrames() {
+        return writtenFrames.get();
+    }
+
+    /**
+     * Boucle du thread d'encodage : vide la file jusqu'à la fermeture.
+     * Une frame qui ne peut pas être écrite est ignorée ; si la boucle s'arrête malgré tout,
+     * l'enregistrement est marqué fermé pour que {@link #submit} n'attende plus de place.
+     */
+    private void encodeLoop() {
+        try {
+            while (!closing || !queue.isEmpty()) {
+                Mat frame = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) continue;
+                try {
+                    if (shouldRollOver() && !openSegment()) {
+                        System.err.println("Could not create video writer, recording stopped: " + currentFile);
+                        closing = true;
+                    }
+                    long start = System.nanoTime();
+                    if (writer != null) {
+                        writer.write(frame);
+                    } else if (y4mWriter != null) {
+                        y4mWriter.write(frame, keyCarrier);
+                    }
+                    if (writer != null || y4mWriter != null) {
+                        segmentFrames++;
+                        writtenFrames.incrementAndGet();
+                        LatencyHistogram latency = writeLatency;
+                        if (latency != null) latency.record(System.nanoTime() - start);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Y4M write failed, recording stopped: " + e.getMessage());
+                    closing = true;
+                } catch (RuntimeException e) {
+                    System.err.println("Frame write failed, frame skipped: " + e);
+                } finally {
+                    frameRecycler.accept(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Plus personne ne vide la file : les dépôts suivants sont recyclés directement
+            closing = true;
+        }
+    }
+
+    private boolean shouldRollOver() {
+        if (maxSegmentFrames > 0 && segmentFrames >= maxSegmentFrames) return true;
+        if (maxSegmentBytes > 0 && segmentFrames > 0 && segmentFrames % SIZE_CHECK_INTERVAL == 0) {
+            if (y4mWriter != null) return y4mWriter.getBytesWritten() >= maxSegmentBytes;
+            try {
+                return Files.size(Paths.get(currentFile)) >= maxSegmentBytes;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ferme le fichier courant et ouvre le suivant.
+     */
+    private boolean openSegment() {
+        closeWriters();
+
+        boolean segmented = maxSegmentBytes > 0 || maxSegmentFrames > 0;
+        segmentIndex++;
+        currentFile = segmented
+                ? String.format("%s_%03d%s", basePath, segmentIndex, container.extension())
+                : basePath + container.extension();
+        segmentFrames = 0;
+
+        if (container == Container.Y4M) {
+            try {
+                y4mWriter = new Y4mWriter(Paths.get(currentFile), (int) frameSize.width, (int) frameSize.height,
+                        Y4m.Chroma.C444, fps);
+            } catch (IOException e) {
+                return false;
+            }
+            System.out.println("Recording to " + currentFile);
+            return true;
+        }
+
+        writer = new VideoWriter(currentFile, codec.fourcc(), fps, frameSize, true);
+        if (!writer.isOpened()) {
+            writer.release();
+            writer = null;
+            return false;
+        }
+        System.out.println("Recording to " + currentFile);
+        return true;
+    }
+
+    private void closeWriters() {
+        if (writer != null) {
+            writer.release();
+            writer = null;
+        }
+        if (y4mWriter != null) {
+            try {
+                y4mWriter.close();
+            } catch (IOException e) {
+                System.err.println("Could not finalize " + currentFile + ": " + e.getMessage());
+            }
+            y4mWriter = null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+/**
+ * Noyaux de calcul sur les lignes d'analyse (float) utilisés par la cryptanalyse :
+ * somme, centrage avec norme, produit scalaire.
+ * Une version vectorielle (SIMD, jdk.incubator.vector) est utilisée si le module est chargé
+ * (option JVM {@code --add-modules jdk.incubator.vector}), sinon la version scalaire.
+ */
+interface RowKernels {
+
+    /**
+     * Noyaux retenus pour la JVM courante.
+     */
+    RowKernels INSTANCE = select();
+
+    /**
+     * @return La somme des éléments.
+     */
+    float sum(float[] v);
+
+    /**
+     * Retire la moyenne de chaque élément (sur place).
+     *
+     * @return La somme des carrés après centrage.
+     */
+    float centerAndSquare(float[] v, float mean);
+
+    /**
+     * @return Le produit scalaire de a et b (même longueur).
+     */
+    float dot(float[] a, float[] b);
+
+    private static RowKernels select() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (RowKernels) Class.forName("VectorRowKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Vector API unavailable, using scalar kernels: " + e);
+            }
+        }
+        return new ScalarRowKernels();
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+/**
+ * Stratégie de score d'une paire de lignes en niveaux de gris 8 bits ({@link GreyRows}),
+ * utilisée par la cryptanalyse à la place de la corrélation de Pearson.
+ * Les calculs se font en entiers (accumulation int/long, vectorisable par le JIT) directement
+ * sur les octets de l'image, sans conversion en flottants.
+ * La similarité renvoyée est comprise entre 0 et 1 (1 pour deux lignes identiques) : les
+ * recherches de clé l'utilisent comme une corrélation (somme sur les paires adjacentes,
+ * majorant de 1 par paire pour l'abandon anticipé).
+ */
+public interface RowMetric {
+
+    /**
+     * Similarité de deux lignes d'un même tableau de pixels.
+     *
+     * @param pixels Pixels en niveaux de gris (non signés), lignes contiguës.
+     * @param offsetA Début de la première ligne.
+     * @param offsetB Début de la seconde ligne.
+     * @param width Nombre de pixels par ligne.
+     * @return Une similarité entre 0 et 1.
+     */
+    float similarity(byte[] pixels, int offsetA, int offsetB, int width);
+}
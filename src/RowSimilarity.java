@@ -0,0 +1,197 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.util.stream.IntStream;
+
+/**
+ * Matrice de similarité entre toutes les paires de lignes d'une image chiffrée.
+ * Chaque case contient la corrélation de Pearson des deux lignes, ou leur similarité selon une
+ * métrique entière ({@link RowMetric}), calculée une seule fois,
+ * ce qui permet d'évaluer une clé candidate en O(h) simples lectures de table.
+ * La matrice étant symétrique, seul le triangle supérieur (hors diagonale) est stocké, en float.
+ */
+public class RowSimilarity {
+
+    private final int size;
+    private final int[] rowOffsets;
+    private final float[] values;
+
+    /**
+     * Alloue une matrice vide pour {@code size} lignes.
+     *
+     * @param size Nombre de lignes de l'image analysée.
+     */
+    private RowSimilarity(int size) {
+        this(size, new float[packedSize(size)]);
+    }
+
+    private RowSimilarity(int size, float[] values) {
+        this.size = size;
+        this.rowOffsets = new int[size];
+        this.values = values;
+
+        for (int a = 0; a < size; a++) {
+            rowOffsets[a] = rowOffset(size, a);
+        }
+    }
+
+    /**
+     * Nombre de cases du triangle compact pour {@code size} lignes.
+     */
+    static int packedSize(int size) {
+        long count = (long) size * (size - 1) / 2;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image trop haute pour la matrice de similarité : " + size);
+        }
+        return (int) count;
+    }
+
+    /**
+     * Début de la ligne a dans le triangle compact : cases (a, a+1) ... (a, size-1).
+     */
+    static int rowOffset(int size, int a) {
+        return (int) ((long) a * (2L * size - a - 1) / 2);
+    }
+
+    /**
+     * Construit la matrice à partir d'un triangle supérieur compact déjà calculé
+     * (même disposition : ligne a à partir de {@link #rowOffset}).
+     *
+     * @param size Nombre de lignes.
+     * @param packedValues Corrélations des paires (a, b), a < b (conservées telles quelles, sans copie).
+     * @return La matrice de similarité correspondante.
+     */
+    static RowSimilarity fromPackedValues(int size, float[] packedValues) {
+        if (packedValues.length != packedSize(size)) {
+            throw new IllegalArgumentException("Taille du triangle incorrecte : " + packedValues.length);
+        }
+        return new RowSimilarity(size, packedValues);
+    }
+
+    /**
+     * Construit la matrice à partir d'une image (réduite en largeur et convertie en niveaux de gris).
+     *
+     * @param image Image chiffrée à analyser.
+     * @param analysisWidth Largeur de travail utilisée pour la corrélation.
+     * @return La matrice de similarité des lignes de l'image.
+     */
+    public static RowSimilarity fromImage(Mat image, int analysisWidth) {
+        return fromRows(AnalysisRows.fromImage(image, analysisWidth));
+    }
+
+    /**
+     * Construit la matrice à partir d'une image, avec la métrique de score choisie.
+     *
+     * @param image Image chiffrée à analyser.
+     * @param analysisWidth Largeur de travail.
+     * @param metric Métrique de score des paires de lignes.
+     * @return La matrice de similarité des lignes de l'image.
+     */
+    public static RowSimilarity fromImage(Mat image, int analysisWidth, VideoScrambler.ScoringMetric metric) {
+        if (metric.rowMetric() == null) return fromImage(image, analysisWidth);
+        return fromRows(GreyRows.fromImage(image, analysisWidth), metric.rowMetric());
+    }
+
+    /**
+     * Construit la matrice à partir de lignes 8 bits déjà réduites, avec la métrique de score choisie
+     * (sans OpenCV).
+     *
+     * @param rows Lignes en niveaux de gris.
+     * @param metric Métrique de score des paires de lignes.
+     * @return La matrice de similarité correspondante.
+     */
+    public static RowSimilarity fromRows(GreyRows rows, VideoScrambler.ScoringMetric metric) {
+        if (metric.rowMetric() == null) return fromRows(AnalysisRows.fromGrey(rows));
+        return fromRows(rows, metric.rowMetric());
+    }
+
+    /**
+     * Construit la matrice à partir de lignes 8 bits, avec une métrique entière.
+     *
+     * @param rows Lignes en niveaux de gris.
+     * @param metric Métrique de score des paires de lignes.
+     * @return La matrice de similarité correspondante.
+     */
+    public static RowSimilarity fromRows(GreyRows rows, RowMetric metric) {
+        int h = rows.height();
+        RowSimilarity similarity = new RowSimilarity(h);
+
+        IntStream.range(0, h).parallel().forEach(a -> {
+            int offset = similarity.rowOffsets[a];
+            for (int b = a + 1; b < h; b++) {
+                similarity.values[offset + (b - a - 1)] = rows.similarity(a, b, metric);
+            }
+        });
+        return similarity;
+    }
+
+    /**
+     * Construit la matrice à partir de lignes d'analyse déjà préparées.
+     *
+     * @param rows Lignes centrées et normes inverses.
+     * @return La matrice de similarité correspondante.
+     */
+    public static RowSimilarity fromRows(AnalysisRows rows) {
+        int h = rows.height();
+        RowSimilarity similarity = new RowSimilarity(h);
+
+        IntStream.range(0, h).parallel().forEach(a -> {
+            int offset = similarity.rowOffsets[a];
+            for (int b = a + 1; b < h; b++) {
+                similarity.values[offset + (b - a - 1)] = rows.correlation(a, b);
+            }
+        });
+        return similarity;
+    }
+
+    /**
+     * @return Le triangle supérieur compact (disposition de {@link #fromPackedValues}, ne pas modifier).
+     */
+    float[] packedValues() {
+        return values;
+    }
+
+    /**
+     * @return Nombre de lignes couvertes par la matrice.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Corrélation entre les lignes a et b de l'image chiffrée.
+     *
+     * @param a Indice de la première ligne.
+     * @param b Indice de la seconde ligne.
+     * @return La corrélation de Pearson (ou la similarité) des deux lignes (1 si a == b).
+     */
+    public float get(int a, int b) {
+        if (a == b) return 1f;
+        if (a > b) {
+            int tmp = a;
+            a = b;
+            b = tmp;
+        }
+        return values[rowOffsets[a] + (b - a - 1)];
+    }
+
+    /**
+     * Score de lisibilité d'une clé : somme des corrélations entre lignes adjacentes
+     * de l'image reconstruite avec la carte de permutation donnée.
+     *
+     * @param map Carte de permutation (issue de {@link VideoScrambler#getPermutationMap}).
+     * @return La corrélation totale des paires adjacentes.
+     */
+    public double score(int[] map) {
+        double totalCorrelation = 0;
+        for (int i = 0; i < size - 1; i++) {
+            totalCorrelation += get(map[i], map[i + 1]);
+        }
+        return totalCorrelation;
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+/**
+ * Somme des différences absolues (SAD) : écart moyen entre pixels de même colonne, accumulé en int.
+ * La plus rapide des métriques ; moins sensible que Pearson aux variations de contraste.
+ */
+final class SadRowMetric implements RowMetric {
+
+    @Override
+    public float similarity(byte[] pixels, int offsetA, int offsetB, int width) {
+        if (width == 0) return 1f;
+        // Au plus 255 par pixel : pas de débordement en int jusqu'à 8 millions de colonnes
+        int sad = 0;
+        for (int x = 0; x < width; x++) {
+            sad += Math.abs((pixels[offsetA + x] & 0xFF) - (pixels[offsetB + x] & 0xFF));
+        }
+        return 1f - sad / (255f * width);
+    }
+}
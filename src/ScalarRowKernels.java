@@ -0,0 +1,37 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+/**
+ * Noyaux de calcul scalaires (repli quand l'API Vector n'est pas disponible).
+ */
+final class ScalarRowKernels implements RowKernels {
+
+    @Override
+    public float sum(float[] v) {
+        float sum = 0;
+        for (float x : v) sum += x;
+        return sum;
+    }
+
+    @Override
+    public float centerAndSquare(float[] v, float mean) {
+        float sumSq = 0;
+        for (int i = 0; i < v.length; i++) {
+            v[i] -= mean;
+            sumSq += v[i] * v[i];
+        }
+        return sumSq;
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        float dotProduct = 0;
+        for (int k = 0; k < a.length; k++) {
+            dotProduct += a[k] * b[k];
+        }
+        return dotProduct;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Client de charge du serveur de chiffrement ({@link ScrambleServer}) : ouvre plusieurs flux en
+ * parallèle, envoie des frames synthétiques (dégradés bruités, différents pour chaque flux) et
+ * mesure la latence aller-retour et le débit de chaque flux. Chaque frame renvoyée est comparée
+ * au résultat attendu, calculé localement.
+ *
+ * Usage :
+ *   java ScrambleLoadClient [--connect tcp:[host:]port|unix:path] [--streams 4] [--frames 300]
+ *                           [--width 1280] [--height 720] [--channels 3] [--fps 0] [--stego]
+ */
+public class ScrambleLoadClient {
+
+    // Frames synthétiques distinctes par flux (envoyées en boucle)
+    private static final int FRAME_VARIANTS = 4;
+
+    private SocketAddress address = ScrambleProtocol.parseAddress("tcp:127.0.0.1:7070");
+    private int streams = 4;
+    private int frames = 300;
+    private int width = 1280;
+    private int height = 720;
+    private int channels = 3;
+    private double fps = 0;
+    private boolean stego = false;
+
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    /**
+     * Point d'entrée du client de charge.
+     *
+     * @param args Arguments de la ligne de commande.
+     */
+    public static void main(String[] args) {
+        ScrambleLoadClient client = new ScrambleLoadClient();
+        try {
+            client.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java ScrambleLoadClient [--connect tcp:[host:]port|unix:path] [--streams N]");
+            System.err.println("                               [--frames N] [--width W] [--height H] [--channels 1|3]");
+            System.err.println("                               [--fps F] [--stego]");
+            System.exit(2);
+        }
+        System.exit(client.run() ? 0 : 1);
+    }
+
+    void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--stego")) {
+                stego = true;
+                continue;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--connect": address = ScrambleProtocol.parseAddress(value); break;
+                    case "--streams": streams = Math.max(1, Integer.parseInt(value)); break;
+                    case "--frames": frames = Math.max(1, Integer.parseInt(value)); break;
+                    case "--width": width = Integer.parseInt(value); break;
+                    case "--height": height = Integer.parseInt(value); break;
+                    case "--channels": channels = Integer.parseInt(value); break;
+                    case "--fps": fps = Double.parseDouble(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + arg + ": " + value);
+            }
+        }
+    }
+
+    /**
+     * Lance tous les flux, attend leur fin et affiche les résultats.
+     *
+     * @return true si tous les flux ont abouti et toutes les frames sont correctes.
+     */
+    boolean run() {
+        StreamStats[] allStats = new StreamStats[streams];
+        List<Thread> threads = new ArrayList<>();
+        boolean[] succeeded = new boolean[streams];
+
+        for (int k = 0; k < streams; k++) {
+            int stream = k;
+            Thread thread = new Thread(() -> succeeded[stream] = runStream(stream, allStats), "load-stream-" + k);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        long received = 0;
+        double framesPerSecond = 0;
+        for (StreamStats stats : allStats) {
+            if (stats == null) continue;
+            System.out.println(stats);
+            received += stats.getFramesOut();
+            framesPerSecond += stats.getFramesPerSecond();
+        }
+        System.out.println(String.format("%d streams, %d frames (%.1f frames/s), latency %s, %d mismatched frames",
+                streams, received, framesPerSecond, totalLatency, mismatches.get()));
+
+        for (boolean ok : succeeded) {
+            if (!ok) return false;
+        }
+        return mismatches.get() == 0;
+    }
+
+    /**
+     * Un flux : envoi des frames depuis un thread, réception et vérification depuis celui-ci.
+     */
+    private boolean runStream(int stream, StreamStats[] allStats) {
+        int r = (37 * stream + 11) % 256;
+        int s = (53 * stream + 7) % 128;
+        int frameBytes = width * height * channels;
+
+        // Frames envoyées et résultats attendus
+        ByteBuffer[] sent = new ByteBuffer[FRAME_VARIANTS];
+        ByteBuffer[] expected = new ByteBuffer[FRAME_VARIANTS];
+        Random random = new Random(stream);
+        for (int v = 0; v < FRAME_VARIANTS; v++) {
+            sent[v] = syntheticFrame(stream, v, random);
+            expected[v] = ByteBuffer.allocateDirect(frameBytes);
+            VideoScrambler.processPlanes(sent[v], expected[v], width * channels, height, 1, r, s, false);
+            if (stego) VideoScrambler.embedKeyInPlace(expected[v], r, s);
+        }
+
+        // Débit mesuré à partir de la connexion (la génération des frames n'est pas comptée)
+        StreamStats stats = new StreamStats("client stream " + stream);
+        allStats[stream] = stats;
+        ConcurrentLinkedQueue<Long> sentAt = new ConcurrentLinkedQueue<>();
+        try (SocketChannel channel = ScrambleProtocol.connect(address)) {
+            new ScrambleProtocol.StreamHeader(false, stego, r, s, width, height, channels).write(channel);
+            int status = ScrambleProtocol.readStatus(channel);
+            if (status != ScrambleProtocol.STATUS_OK) {
+                System.err.println("Stream " + stream + " rejected by the server (status " + status + ")");
+                return false;
+            }
+
+            Thread sender = new Thread(() -> sendFrames(channel, sent, sentAt, stats), "load-stream-" + stream + "-sender");
+            sender.start();
+
+            ByteBuffer received = ByteBuffer.allocateDirect(frameBytes);
+            for (int i = 0; ; i++) {
+                int length = ScrambleProtocol.readFrameLength(channel);
+                if (length == 0) break;
+                if (length != frameBytes) throw new IOException("Unexpected frame size " + length);
+                received.clear();
+                ScrambleProtocol.readFully(channel, received);
+                Long sentNanos = sentAt.poll();
+                long latency = System.nanoTime() - (sentNanos != null ? sentNanos : System.nanoTime());
+                stats.frameOut(frameBytes, latency);
+                totalLatency.record(latency);
+
+                received.flip();
+                if (!received.equals(expected[i % FRAME_VARIANTS])) {
+                    mismatches.incrementAndGet();
+                }
+            }
+            sender.join();
+            return stats.getFramesOut() == frames;
+        } catch (IOException e) {
+            System.err.println("Stream " + stream + " failed: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void sendFrames(SocketChannel channel, ByteBuffer[] sent, ConcurrentLinkedQueue<Long> sentAt,
+                            StreamStats stats) {
+        long start = System.nanoTime();
+        long period = (fps > 0) ? (long) (1e9 / fps) : 0;
+        try {
+            for (int i = 0; i < frames; i++) {
+                if (period > 0) {
+                    // Cadence d'une source temps réel
+                    long wait = start + i * period - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+                sentAt.add(System.nanoTime());
+                ScrambleProtocol.writeFrame(channel, sent[i % FRAME_VARIANTS].duplicate());
+                stats.frameIn();
+            }
+            ScrambleProtocol.writeFrame(channel, ByteBuffer.allocate(0));
+        } catch (IOException e) {
+            System.err.println("Sending failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dégradé oblique propre au flux et à la variante, avec un léger bruit : des lignes voisines
+     * proches, comme dans une vraie image.
+     */
+    private ByteBuffer syntheticFrame(int stream, int variant, Random random) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(width * height * channels);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int c = 0; c < channels; c++) {
+                    int value = x / 3 + y / 2 + 17 * variant + 29 * stream + 40 * c + random.nextInt(8);
+                    frame.put((byte) value);
+                }
+            }
+        }
+        return frame.flip();
+    }
+}
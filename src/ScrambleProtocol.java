@@ -0,0 +1,211 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Protocole binaire du serveur de chiffrement ({@link ScrambleServer}), entiers en big-endian.
+ *
+ * Client -> serveur : un en-tête de flux (magic, mode, options, r, s, largeur, hauteur, canaux),
+ * puis pour chaque frame sa taille sur 4 octets suivie des pixels bruts (lignes BGR ou niveaux
+ * de gris, sans remplissage). Une taille 0 termine le flux.
+ * Serveur -> client : magic et statut (0 = accepté), puis chaque frame traitée, dans l'ordre,
+ * sous la même forme ; une taille 0 confirme la fin du flux.
+ */
+public final class ScrambleProtocol {
+
+    /** "VSCR". */
+    public static final int MAGIC = 0x56534352;
+
+    public static final byte MODE_SCRAMBLE = 0;
+    public static final byte MODE_UNSCRAMBLE = 1;
+
+    /** Chiffrement : clé cachée dans chaque frame / déchiffrement : clé lue dans chaque frame. */
+    public static final byte FLAG_STEGO = 1;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_BAD_HEADER = 1;
+    public static final int STATUS_FRAME_TOO_LARGE = 2;
+    /** Trop de flux ouverts, ou tampons du flux au-delà de la mémoire réservée par le serveur. */
+    public static final int STATUS_SERVER_BUSY = 3;
+
+    // Taille d'un en-tête de flux : magic, mode, options, puis cinq entiers
+    static final int HEADER_BYTES = 4 + 1 + 1 + 5 * 4;
+    // Taille maximale d'une frame acceptée (8K en BGR : environ 100 Mo)
+    static final int MAX_FRAME_BYTES = 128 * 1024 * 1024;
+
+    private ScrambleProtocol() {
+    }
+
+    /**
+     * En-tête d'un flux.
+     */
+    public static final class StreamHeader {
+        public final boolean unscrambleMode;
+        public final boolean stego;
+        public final int r;
+        public final int s;
+        public final int width;
+        public final int height;
+        public final int channels;
+
+        public StreamHeader(boolean unscrambleMode, boolean stego, int r, int s, int width, int height, int channels) {
+            this.unscrambleMode = unscrambleMode;
+            this.stego = stego;
+            this.r = r;
+            this.s = s;
+            this.width = width;
+            this.height = height;
+            this.channels = channels;
+        }
+
+        /**
+         * @return Taille d'une frame en octets (peut dépasser un int si l'en-tête est invalide).
+         */
+        public long frameBytes() {
+            return (long) width * height * channels;
+        }
+
+        /**
+         * @return true si les dimensions et le format sont acceptables (clé cachée : 8 + 7 bits au plus).
+         */
+        public boolean isValid() {
+            boolean keyFits = !stego || unscrambleMode || KeySpace.DEFAULT.contains(r, s);
+            return width > 0 && height > 0 && (channels == 1 || channels == 3) && r >= 0 && s >= 0 && keyFits;
+        }
+
+        void write(SocketChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+            buffer.putInt(MAGIC)
+                    .put(unscrambleMode ? MODE_UNSCRAMBLE : MODE_SCRAMBLE)
+                    .put(stego ? FLAG_STEGO : 0)
+                    .putInt(r).putInt(s).putInt(width).putInt(height).putInt(channels)
+                    .flip();
+            writeFully(channel, buffer);
+        }
+
+        /**
+         * @return L'en-tête lu, ou null si le magic ou le mode sont inconnus.
+         */
+        static StreamHeader read(SocketChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, buffer);
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) return null;
+            byte mode = buffer.get();
+            byte flags = buffer.get();
+            if (mode != MODE_SCRAMBLE && mode != MODE_UNSCRAMBLE) return null;
+            return new StreamHeader(mode == MODE_UNSCRAMBLE, (flags & FLAG_STEGO) != 0,
+                    buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+        }
+
+        @Override
+        public String toString() {
+            return (unscrambleMode ? "unscramble" : "scramble") + (stego ? "+stego" : "")
+                    + " " + width + "x" + height + "x" + channels;
+        }
+    }
+
+    /**
+     * Interprète une adresse d'écoute ou de connexion.
+     *
+     * @param address {@code tcp:[hôte:]port} ou {@code unix:chemin}.
+     * @return L'adresse correspondante.
+     */
+    public static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+        if (address.startsWith("tcp:")) {
+            String hostPort = address.substring("tcp:".length());
+            int colon = hostPort.lastIndexOf(':');
+            try {
+                return (colon < 0)
+                        ? new InetSocketAddress("127.0.0.1", Integer.parseInt(hostPort))
+                        : new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid port in address: " + address);
+            }
+        }
+        throw new IllegalArgumentException("Address must be tcp:[host:]port or unix:path: " + address);
+    }
+
+    /**
+     * @return La famille de protocole d'une adresse obtenue par {@link #parseAddress}.
+     */
+    static StandardProtocolFamily familyOf(SocketAddress address) {
+        return (address instanceof UnixDomainSocketAddress) ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET;
+    }
+
+    /**
+     * Ouvre une connexion cliente bloquante.
+     */
+    public static SocketChannel connect(SocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(familyOf(address));
+        try {
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Écrit une frame (taille puis pixels) ; une frame vide termine le flux.
+     *
+     * @param frame Pixels, de la position à la limite (la position est avancée).
+     */
+    static void writeFrame(SocketChannel channel, ByteBuffer frame) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4).putInt(frame.remaining()).flip();
+        ByteBuffer[] parts = {length, frame};
+        while (length.hasRemaining() || frame.hasRemaining()) {
+            channel.write(parts);
+        }
+    }
+
+    /**
+     * Lit la taille de la frame suivante.
+     */
+    static int readFrameLength(SocketChannel channel) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length);
+        return length.flip().getInt();
+    }
+
+    static void writeStatus(SocketChannel channel, int status) throws IOException {
+        writeFully(channel, ByteBuffer.allocate(8).putInt(MAGIC).putInt(status).flip());
+    }
+
+    /**
+     * @return Le statut renvoyé par le serveur, ou -1 si la réponse n'est pas celle du protocole.
+     */
+    static int readStatus(SocketChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        readFully(channel, buffer);
+        buffer.flip();
+        return (buffer.getInt() == MAGIC) ? buffer.getInt() : -1;
+    }
+
+    static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("Connection closed by peer");
+        }
+    }
+
+    static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
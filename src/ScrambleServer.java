@@ -0,0 +1,456 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serveur sans IHM qui chiffre ou déchiffre plusieurs flux vidéo à la fois, reçus sur une socket
+ * TCP ou Unix ({@link ScrambleProtocol}). Chaque connexion est un flux avec sa clé et son mode.
+ * Tous les flux partagent un seul pool de threads et le cache des cartes de permutation
+ * ({@link PermutationCache}). Les frames sont traitées sur leurs octets bruts, sans OpenCV.
+ *
+ * Équité : un flux n'a jamais plus de {@code framesPerStream} frames en attente dans le pool
+ * (au-delà, sa lecture attend) ; la file du pool étant FIFO, un flux rapide ne peut pas affamer
+ * les autres. Les frames d'un flux sont renvoyées dans l'ordre de réception.
+ *
+ * Mémoire : chaque flux coûte deux threads et 2 × {@code framesPerStream} tampons directs d'une frame.
+ * Le nombre de flux ouverts est plafonné ({@code maxStreams}, vérifié à l'acceptation), et les tampons
+ * d'un flux sont réservés sur un budget commun ({@code memoryBudget}) avant d'être alloués ; au-delà,
+ * la connexion est refusée ({@link ScrambleProtocol#STATUS_SERVER_BUSY}).
+ *
+ * Usage :
+ *   java ScrambleServer [--listen tcp:[host:]port|unix:path] [--workers N] [--stream-frames N] [--stats-seconds S]
+ *                       [--max-streams N] [--memory-mb M]
+ */
+public class ScrambleServer implements AutoCloseable {
+
+    private static final String DEFAULT_ADDRESS = "tcp:127.0.0.1:7070";
+    private static final int DEFAULT_FRAMES_PER_STREAM = 2;
+    private static final int DEFAULT_MAX_STREAMS = 64;
+    private static final long DEFAULT_MEMORY_MB = 1024;
+
+    private final SocketAddress address;
+    private final int workers;
+    private final int framesPerStream;
+    private final int maxStreams;
+    private final long memoryBudget;
+    // Octets de tampons réservés par les flux ouverts
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextStreamId = new AtomicInteger(1);
+    // Totaux des flux terminés
+    private final AtomicLong completedStreams = new AtomicLong();
+    private final AtomicLong completedFrames = new AtomicLong();
+
+    private ExecutorService workerPool;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+    private volatile boolean running = false;
+
+    /**
+     * @param address Adresse d'écoute ({@link ScrambleProtocol#parseAddress}).
+     * @param workers Nombre de threads de traitement, partagés par tous les flux.
+     * @param framesPerStream Nombre maximal de frames d'un même flux en cours de traitement.
+     */
+    public ScrambleServer(SocketAddress address, int workers, int framesPerStream) {
+        this(address, workers, framesPerStream, DEFAULT_MAX_STREAMS, DEFAULT_MEMORY_MB * 1024 * 1024);
+    }
+
+    /**
+     * @param address Adresse d'écoute ({@link ScrambleProtocol#parseAddress}).
+     * @param workers Nombre de threads de traitement, partagés par tous les flux.
+     * @param framesPerStream Nombre maximal de frames d'un même flux en cours de traitement.
+     * @param maxStreams Nombre maximal de flux ouverts en même temps.
+     * @param memoryBudget Octets de tampons de frames que l'ensemble des flux peut réserver.
+     */
+    public ScrambleServer(SocketAddress address, int workers, int framesPerStream, int maxStreams,
+                          long memoryBudget) {
+        this.address = address;
+        this.workers = Math.max(1, workers);
+        this.framesPerStream = Math.max(1, framesPerStream);
+        this.maxStreams = Math.max(1, maxStreams);
+        this.memoryBudget = Math.max(0, memoryBudget);
+    }
+
+    /**
+     * Point d'entrée du serveur.
+     *
+     * @param args Arguments de la ligne de commande.
+     */
+    public static void main(String[] args) {
+        String listen = DEFAULT_ADDRESS;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int framesPerStream = DEFAULT_FRAMES_PER_STREAM;
+        int statsSeconds = 10;
+        int maxStreams = DEFAULT_MAX_STREAMS;
+        long memoryMb = DEFAULT_MEMORY_MB;
+        SocketAddress address;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+                String value = args[++i];
+                switch (arg) {
+                    case "--listen": listen = value; break;
+                    case "--workers": workers = Integer.parseInt(value); break;
+                    case "--stream-frames": framesPerStream = Integer.parseInt(value); break;
+                    case "--stats-seconds": statsSeconds = Integer.parseInt(value); break;
+                    case "--max-streams": maxStreams = Integer.parseInt(value); break;
+                    case "--memory-mb": memoryMb = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            address = ScrambleProtocol.parseAddress(listen);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java ScrambleServer [--listen tcp:[host:]port|unix:path] [--workers N]");
+            System.err.println("                           [--stream-frames N] [--stats-seconds S]");
+            System.err.println("                           [--max-streams N] [--memory-mb M]");
+            System.exit(2);
+            return;
+        }
+
+        ScrambleServer server = new ScrambleServer(address, workers, framesPerStream, maxStreams,
+                memoryMb * 1024 * 1024);
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Could not listen on " + listen + ": " + e.getMessage());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "scramble-server-shutdown"));
+
+        // Statistiques périodiques de tous les flux
+        if (statsSeconds > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "scramble-server-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(server::printStats, statsSeconds, statsSeconds, TimeUnit.SECONDS);
+        }
+        System.out.println("Scramble server listening on " + listen + " (" + workers + " workers, "
+                + framesPerStream + " frames in flight per stream, at most " + maxStreams + " streams and "
+                + memoryMb + " MB of frame buffers)");
+    }
+
+    /**
+     * Ouvre la socket d'écoute et démarre l'acceptation des connexions.
+     */
+    public void start() throws IOException {
+        if (running) return;
+        if (address instanceof UnixDomainSocketAddress) {
+            // Fichier de socket laissé par une exécution précédente
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+        serverChannel = ServerSocketChannel.open(ScrambleProtocol.familyOf(address));
+        serverChannel.bind(address);
+
+        AtomicInteger workerIndex = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "scramble-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "scramble-server-accept");
+        acceptThread.start();
+    }
+
+    /**
+     * Ferme la socket d'écoute et toutes les connexions en cours.
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Déjà fermée
+        }
+        for (Session session : sessions) {
+            session.closeChannel();
+        }
+        workerPool.shutdownNow();
+        if (address instanceof UnixDomainSocketAddress) {
+            try {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            } catch (IOException e) {
+                // Rien à nettoyer
+            }
+        }
+    }
+
+    /**
+     * @return Les compteurs des flux actuellement ouverts.
+     */
+    public List<StreamStats> getStreamStats() {
+        List<StreamStats> stats = new ArrayList<>();
+        for (Session session : sessions) {
+            if (session.stats != null) stats.add(session.stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Affiche les compteurs de chaque flux ouvert et les totaux.
+     */
+    public void printStats() {
+        List<StreamStats> stats = getStreamStats();
+        double framesPerSecond = 0;
+        for (StreamStats stream : stats) {
+            System.out.println("  " + stream);
+            framesPerSecond += stream.getFramesPerSecond();
+        }
+        System.out.println(String.format("Streams: %d open (%.1f frames/s), %d closed (%d frames)",
+                stats.size(), framesPerSecond, completedStreams.get(), completedFrames.get()));
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                // Plafond des flux : refus immédiat, sans thread ni tampon
+                if (sessions.size() >= maxStreams) {
+                    System.err.println("Connection rejected: " + maxStreams + " streams already open");
+                    rejectBusy(channel);
+                    continue;
+                }
+                Session session = new Session(channel, nextStreamId.getAndIncrement());
+                sessions.add(session);
+                Thread thread = new Thread(session, "scramble-stream-" + session.id);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Refuse une connexion (le client lit le statut après avoir envoyé son en-tête) et la ferme.
+     */
+    private static void rejectBusy(SocketChannel channel) {
+        try (channel) {
+            ScrambleProtocol.writeStatus(channel, ScrambleProtocol.STATUS_SERVER_BUSY);
+        } catch (IOException e) {
+            // Client déjà parti
+        }
+    }
+
+    /**
+     * Réserve des octets de tampons sur le budget commun.
+     *
+     * @return false si le budget serait dépassé (rien n'est réservé).
+     */
+    private boolean reserveMemory(long bytes) {
+        while (true) {
+            long reserved = reservedBytes.get();
+            if (reserved + bytes > memoryBudget) return false;
+            if (reservedBytes.compareAndSet(reserved, reserved + bytes)) return true;
+        }
+    }
+
+    /**
+     * Frame d'un flux : tampons d'entrée et de sortie, réutilisés tout au long du flux.
+     */
+    private static final class Frame {
+        final ByteBuffer input;
+        final ByteBuffer output;
+        long receivedNanos;
+
+        Frame(int frameBytes) {
+            input = ByteBuffer.allocateDirect(frameBytes);
+            output = ByteBuffer.allocateDirect(frameBytes);
+        }
+    }
+
+    /**
+     * Une connexion : le thread de la connexion lit les frames et les confie au pool partagé,
+     * un second thread renvoie les résultats dans l'ordre.
+     */
+    private final class Session implements Runnable {
+
+        final SocketChannel channel;
+        final int id;
+        volatile StreamStats stats;
+        private volatile Thread readerThread;
+
+        private ScrambleProtocol.StreamHeader header;
+        private int frameBytes;
+        // Octets réservés sur le budget commun, rendus à la fermeture
+        private long bufferBytes = 0;
+        // Frames libres : leur nombre borne les frames du flux en cours de traitement
+        private BlockingQueue<Frame> freeFrames;
+        // Résultats en attente, dans l'ordre de réception (null = fin du flux)
+        private final BlockingQueue<Future<Frame>> inFlight = new LinkedBlockingQueue<>();
+
+        Session(SocketChannel channel, int id) {
+            this.channel = channel;
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            Thread writer = null;
+            readerThread = Thread.currentThread();
+            try {
+                header = ScrambleProtocol.StreamHeader.read(channel);
+                if (header == null || !header.isValid()) {
+                    ScrambleProtocol.writeStatus(channel, ScrambleProtocol.STATUS_BAD_HEADER);
+                    return;
+                }
+                if (header.frameBytes() > ScrambleProtocol.MAX_FRAME_BYTES) {
+                    ScrambleProtocol.writeStatus(channel, ScrambleProtocol.STATUS_FRAME_TOO_LARGE);
+                    return;
+                }
+                frameBytes = (int) header.frameBytes();
+                // Tampons d'entrée et de sortie de chaque frame, réservés avant toute allocation
+                long needed = 2L * frameBytes * framesPerStream;
+                if (!reserveMemory(needed)) {
+                    System.err.println("Stream " + id + " rejected: " + needed
+                            + " bytes of frame buffers exceed the memory budget");
+                    ScrambleProtocol.writeStatus(channel, ScrambleProtocol.STATUS_SERVER_BUSY);
+                    return;
+                }
+                bufferBytes = needed;
+                freeFrames = new ArrayBlockingQueue<>(framesPerStream);
+                for (int i = 0; i < framesPerStream; i++) {
+                    freeFrames.add(new Frame(frameBytes));
+                }
+                stats = new StreamStats("stream " + id + " [" + header + "]");
+                ScrambleProtocol.writeStatus(channel, ScrambleProtocol.STATUS_OK);
+
+                writer = new Thread(this::writeLoop, "scramble-stream-" + id + "-writer");
+                writer.setDaemon(true);
+                writer.start();
+
+                readLoop();
+                writer.join();
+            } catch (IOException e) {
+                if (running) System.err.println("Stream " + id + " closed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeChannel();
+                if (writer != null) writer.interrupt();
+                sessions.remove(this);
+                reservedBytes.addAndGet(-bufferBytes);
+                if (stats != null) {
+                    completedStreams.incrementAndGet();
+                    completedFrames.addAndGet(stats.getFramesOut());
+                    System.out.println("Closed " + stats);
+                }
+            }
+        }
+
+        private void readLoop() throws IOException, InterruptedException {
+            while (true) {
+                int length = ScrambleProtocol.readFrameLength(channel);
+                if (length == 0) {
+                    inFlight.put(CompletableFuture.completedFuture(null));
+                    return;
+                }
+                if (length != frameBytes) {
+                    throw new IOException("Unexpected frame size " + length + " (expected " + frameBytes + ")");
+                }
+
+                // Attend qu'une frame du flux soit renvoyée si toutes sont en cours
+                Frame frame = freeFrames.take();
+                frame.input.clear();
+                ScrambleProtocol.readFully(channel, frame.input);
+                frame.receivedNanos = System.nanoTime();
+                stats.frameIn();
+                inFlight.put(workerPool.submit(() -> process(frame)));
+            }
+        }
+
+        private Frame process(Frame frame) {
+            int r = header.r;
+            int s = header.s;
+            if (header.unscrambleMode && header.stego) {
+                int[] key = VideoScrambler.extractKey(frame.input);
+                r = key[0];
+                s = key[1];
+            }
+            frame.output.clear();
+            VideoScrambler.processPlanes(frame.input, frame.output, header.width * header.channels, header.height, 1,
+                    r, s, header.unscrambleMode);
+            if (!header.unscrambleMode && header.stego) {
+                VideoScrambler.embedKeyInPlace(frame.output, r, s);
+            }
+            return frame;
+        }
+
+        private void writeLoop() {
+            try {
+                while (true) {
+                    Frame frame = inFlight.take().get();
+                    if (frame == null) {
+                        ScrambleProtocol.writeFrame(channel, ByteBuffer.allocate(0));
+                        return;
+                    }
+                    frame.output.clear();
+                    ScrambleProtocol.writeFrame(channel, frame.output);
+                    stats.frameOut(frameBytes, System.nanoTime() - frame.receivedNanos);
+                    freeFrames.put(frame);
+                }
+            } catch (ExecutionException e) {
+                System.err.println("Stream " + id + " processing failed: " + e.getCause());
+                abort();
+            } catch (IOException e) {
+                abort();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Fin anormale côté écriture : la lecture peut attendre une frame libre qui ne reviendra pas.
+         */
+        private void abort() {
+            closeChannel();
+            Thread reader = readerThread;
+            if (reader != null) reader.interrupt();
+        }
+
+        void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Déjà fermée
+            }
+        }
+    }
+}
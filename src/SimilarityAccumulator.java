@@ -0,0 +1,92 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.util.stream.IntStream;
+
+/**
+ * Cumule les corrélations de lignes de plusieurs frames chiffrées avec la même clé.
+ * Sur une frame sombre ou peu détaillée, beaucoup de lignes sont uniformes (norme nulle) et
+ * n'apportent aucune information ; en moyennant chaque paire de lignes sur toutes les frames où
+ * les deux lignes sont exploitables, on obtient une seule matrice de similarité plus fiable,
+ * explorée par une seule recherche au lieu d'un cassage complet par frame.
+ */
+public class SimilarityAccumulator {
+
+    private final int analysisWidth;
+
+    // Triangle supérieur compact, même disposition que RowSimilarity
+    private int size = -1;
+    private float[] sums;
+    private float[] weights;
+    private int frameCount = 0;
+
+    /**
+     * @param analysisWidth Largeur de travail utilisée pour la corrélation.
+     */
+    public SimilarityAccumulator(int analysisWidth) {
+        this.analysisWidth = analysisWidth;
+    }
+
+    /**
+     * Ajoute une frame chiffrée.
+     *
+     * @param scrambledFrame Frame de même hauteur que les précédentes.
+     */
+    public void add(Mat scrambledFrame) {
+        add(AnalysisRows.fromImage(scrambledFrame, analysisWidth));
+    }
+
+    /**
+     * Ajoute les lignes d'analyse d'une frame. Les lignes uniformes sont ignorées.
+     *
+     * @param rows Lignes de même hauteur que les frames précédentes.
+     */
+    public synchronized void add(AnalysisRows rows) {
+        int h = rows.height();
+        if (size < 0) {
+            int count = RowSimilarity.packedSize(h);
+            size = h;
+            sums = new float[count];
+            weights = new float[count];
+        } else if (h != size) {
+            throw new IllegalArgumentException("Hauteur différente des frames précédentes : " + h + " au lieu de " + size);
+        }
+
+        IntStream.range(0, h).parallel().forEach(a -> {
+            if (rows.invNorm(a) == 0f) return;
+            int offset = RowSimilarity.rowOffset(h, a);
+            for (int b = a + 1; b < h; b++) {
+                if (rows.invNorm(b) == 0f) continue;
+                sums[offset + (b - a - 1)] += rows.correlation(a, b);
+                weights[offset + (b - a - 1)] += 1f;
+            }
+        });
+        frameCount++;
+    }
+
+    /**
+     * @return Nombre de frames cumulées.
+     */
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Matrice de similarité moyenne (0 pour une paire jamais exploitable).
+     *
+     * @return La matrice, ou null si aucune frame n'a été ajoutée.
+     */
+    public synchronized RowSimilarity toSimilarity() {
+        if (size < 0) return null;
+        float[] mean = new float[sums.length];
+        for (int i = 0; i < mean.length; i++) {
+            mean[i] = (weights[i] > 0f) ? sums[i] / weights[i] : 0f;
+        }
+        return RowSimilarity.fromPackedValues(size, mean);
+    }
+}
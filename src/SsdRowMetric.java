@@ -0,0 +1,24 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+/**
+ * Somme des carrés des différences (SSD), accumulée en long, ramenée à l'écart quadratique moyen
+ * pour rester sur la même échelle que {@link SadRowMetric}. Pénalise davantage les grands écarts
+ * (bords d'objets mal raccordés) que les petites variations dues au bruit.
+ */
+final class SsdRowMetric implements RowMetric {
+
+    @Override
+    public float similarity(byte[] pixels, int offsetA, int offsetB, int width) {
+        if (width == 0) return 1f;
+        long ssd = 0;
+        for (int x = 0; x < width; x++) {
+            int diff = (pixels[offsetA + x] & 0xFF) - (pixels[offsetB + x] & 0xFF);
+            ssd += diff * diff;
+        }
+        return 1f - (float) (Math.sqrt((double) ssd / width) / 255.0);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Recherche de clé par passes successives (grossière puis fine) avec abandon anticipé.
+ *
+ * Le paramètre r ne fait que décaler circulairement l'ordre des lignes : toutes les valeurs de r
+ * d'un même s obtiennent presque le même score et seul s se distingue vraiment. D'où :
+ * 1. Pour chaque s, toutes les valeurs de r sont évaluées sur une paire de lignes adjacentes sur
+ *    {@link #SAMPLE_STRIDE}, à partir d'une matrice de similarité calculée sur une largeur réduite.
+ *    Seules les lignes échantillonnées de la carte de permutation sont calculées (formule inverse
+ *    par bloc). On conserve les {@link #TOP_STEPS} valeurs de s au meilleur score grossier.
+ * 2. Pour ces valeurs de s, toutes les clés sont évaluées sur toutes les paires de la matrice
+ *    grossière ; on conserve les {@link #TOP_KEYS} meilleures.
+ * 3. Ces clés sont réévaluées en pleine largeur (corrélations calculées à la demande).
+ * Une clé est abandonnée dès que son score partiel, complété par le maximum possible
+ * (corrélation 1) sur les paires restantes, ne peut plus entrer dans le classement.
+ */
+public final class StagedKeySearch {
+
+    // Une paire adjacente évaluée sur SAMPLE_STRIDE lors de la passe grossière
+    static final int SAMPLE_STRIDE = 4;
+    // Nombre de valeurs de s conservées après la passe 1
+    static final int TOP_STEPS = 8;
+    // Nombre de clés vérifiées en pleine largeur
+    static final int TOP_KEYS = 32;
+
+    private StagedKeySearch() {
+    }
+
+    /**
+     * Classement borné (score décroissant) de clés codées en entier.
+     */
+    private static final class Ranking {
+        final double[] scores;
+        final int[] keys;
+        int size = 0;
+
+        Ranking(int capacity) {
+            scores = new double[capacity];
+            keys = new int[capacity];
+        }
+
+        /**
+         * @return Score à dépasser pour entrer dans le classement.
+         */
+        double threshold() {
+            return (size < keys.length) ? -Double.MAX_VALUE : scores[keys.length - 1];
+        }
+
+        void offer(double score, int key) {
+            int capacity = keys.length;
+            if (size == capacity && score <= scores[capacity - 1]) return;
+            int k = (size < capacity) ? size++ : capacity - 1;
+            while (k > 0 && scores[k - 1] < score) {
+                scores[k] = scores[k - 1];
+                keys[k] = keys[k - 1];
+                k--;
+            }
+            scores[k] = score;
+            keys[k] = key;
+        }
+
+        /**
+         * Ajoute les entrées d'un autre classement à celui-ci (combinaison d'un {@code collect} parallèle :
+         * chaque feuille a son propre classement).
+         */
+        void merge(Ranking other) {
+            for (int k = 0; k < other.size; k++) {
+                offer(other.scores[k], other.keys[k]);
+            }
+        }
+    }
+
+    /**
+     * Classements intermédiaires d'une recherche.
+     */
+    private static final class Candidates {
+        // Passe 1 : valeurs de s retenues
+        final Ranking steps;
+        // Passe 3 : clés en pleine largeur, score décroissant
+        final Ranking keys;
+
+        Candidates(Ranking steps, Ranking keys) {
+            this.steps = steps;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Recherche la meilleure clé.
+     *
+     * @param fullRows Lignes d'analyse en pleine largeur (passe 3).
+     * @param coarse Matrice de similarité en largeur réduite (passes 1 et 2).
+     * @param rMax Nombre de valeurs possibles de r.
+     * @param sMax Nombre de valeurs possibles de s.
+     * @return {r, s}.
+     */
+    public static int[] search(AnalysisRows fullRows, RowSimilarity coarse, int rMax, int sMax) {
+        return search(fullRows, coarse, rMax, sMax, CrackMonitor.NONE);
+    }
+
+    /**
+     * Recherche la meilleure clé, annulable. Unités de travail : une par valeur de s (passe 1),
+     * une par valeur de s retenue (passe 2), puis la passe 3.
+     *
+     * @param monitor Annulation et progression.
+     * @see #search(AnalysisRows, RowSimilarity, int, int)
+     */
+    public static int[] search(AnalysisRows fullRows, RowSimilarity coarse, int rMax, int sMax,
+                               CrackMonitor monitor) {
+        return search(fullRows.height(), fullRows::correlation, coarse, rMax, sMax, monitor);
+    }
+
+    /**
+     * Recherche la meilleure clé avec une métrique entière : la matrice grossière doit avoir été
+     * construite avec la même métrique ({@link RowSimilarity#fromRows(GreyRows, RowMetric)}).
+     *
+     * @param fullRows Lignes 8 bits en pleine largeur (passe 3).
+     * @param metric Métrique de score des paires de lignes.
+     * @see #search(AnalysisRows, RowSimilarity, int, int, CrackMonitor)
+     */
+    public static int[] search(GreyRows fullRows, RowMetric metric, RowSimilarity coarse, int rMax, int sMax,
+                               CrackMonitor monitor) {
+        return search(fullRows.height(), (a, b) -> fullRows.similarity(a, b, metric), coarse, rMax, sMax, monitor);
+    }
+
+    /**
+     * Classements intermédiaires de la recherche, pour vérifier les passes (voir {@code CrackRoundTrip}
+     * dans le module de benchmarks) : toutes les clés de la passe 2 sont notées en pleine largeur,
+     * sans abandon.
+     *
+     * @return [0] : valeurs de s retenues par la passe 1 (meilleure d'abord) ;
+     *         [1..] : clés {r, s} de la passe 3, par score décroissant.
+     * @see #search(AnalysisRows, RowSimilarity, int, int)
+     */
+    public static int[][] candidates(AnalysisRows fullRows, RowSimilarity coarse, int rMax, int sMax) {
+        Candidates candidates = rank(fullRows.height(), fullRows::correlation, coarse, rMax, sMax, TOP_KEYS,
+                CrackMonitor.NONE);
+        int[][] result = new int[1 + candidates.keys.size][];
+        result[0] = new int[candidates.steps.size];
+        for (int k = 0; k < candidates.steps.size; k++) result[0][k] = candidates.steps.keys[k];
+        for (int k = 0; k < candidates.keys.size; k++) {
+            int key = candidates.keys.keys[k];
+            result[1 + k] = new int[]{key >>> 16, key & 0xFFFF};
+        }
+        return result;
+    }
+
+    private static int[] search(int h, PairCorrelation fullCorrelation, RowSimilarity coarse, int rMax, int sMax,
+                                CrackMonitor monitor) {
+        if (h < 2) return new int[]{0, 0};
+        Ranking best = rank(h, fullCorrelation, coarse, rMax, sMax, 1, monitor).keys;
+        return new int[]{best.keys[0] >>> 16, best.keys[0] & 0xFFFF};
+    }
+
+    /**
+     * Les trois passes.
+     *
+     * @param keep Nombre de clés gardées par la passe 3 (1 : seule la meilleure, abandon au plus tôt).
+     */
+    private static Candidates rank(int h, PairCorrelation fullCorrelation, RowSimilarity coarse, int rMax,
+                                   int sMax, int keep, CrackMonitor monitor) {
+        monitor.begin(sMax + TOP_STEPS + 1);
+
+        // Découpage en blocs : début et masque (taille - 1) du bloc de chaque ligne
+        int[] blockStart = new int[h];
+        int[] blockMask = new int[h];
+        List<int[]> blocks = new ArrayList<>();
+        int start = 0;
+        while (start < h) {
+            int size = Integer.highestOneBit(h - start);
+            blocks.add(new int[]{start, size});
+            for (int p = start; p < start + size; p++) {
+                blockStart[p] = start;
+                blockMask[p] = size - 1;
+            }
+            start += size;
+        }
+
+        // Paires échantillonnées (i, i+1)
+        int[] samples = IntStream.iterate(0, i -> i < h - 1, i -> i + SAMPLE_STRIDE).toArray();
+
+        // Passe 1 : toutes les clés, paires échantillonnées, largeur réduite ; meilleur r par s
+        Ranking steps = IntStream.range(0, sMax).parallel().mapToObj(s -> {
+            monitor.checkCancelled();
+            long step = 2L * s + 1;
+
+            // Inverse du pas dans chaque bloc : map[p] = début + inv·(p - début - r) mod taille
+            int[] inverseStep = new int[h];
+            for (int[] block : blocks) {
+                int inv = (block[1] > 1) ? StructuralKeySolver.inverseMod((int) (step & (block[1] - 1)), block[1]) : 0;
+                for (int p = block[0]; p < block[0] + block[1]; p++) inverseStep[p] = inv;
+            }
+
+            double bestForStep = -Double.MAX_VALUE;
+            int bestR = 0;
+            for (int r = 0; r < rMax; r++) {
+                double partial = 0;
+                int remaining = samples.length;
+                boolean aborted = false;
+
+                for (int i : samples) {
+                    int a = blockStart[i] + ((inverseStep[i] * (i - blockStart[i] - r)) & blockMask[i]);
+                    int j = i + 1;
+                    int b = blockStart[j] + ((inverseStep[j] * (j - blockStart[j] - r)) & blockMask[j]);
+                    partial += coarse.get(a, b);
+
+                    if (partial + --remaining < bestForStep) {
+                        aborted = true;
+                        break;
+                    }
+                }
+                if (!aborted && partial > bestForStep) {
+                    bestForStep = partial;
+                    bestR = r;
+                }
+            }
+            monitor.keysEvaluated(rMax);
+            monitor.unitDone(bestR, s, bestForStep / samples.length);
+            Ranking local = new Ranking(TOP_STEPS);
+            local.offer(bestForStep, s);
+            return local;
+        }).collect(() -> new Ranking(TOP_STEPS), Ranking::merge, Ranking::merge);
+
+        // Passe 2 : toutes les clés des s retenus, toutes les paires, largeur réduite
+        Ranking keys = IntStream.range(0, steps.size).parallel().mapToObj(k -> {
+            monitor.checkCancelled();
+            int s = steps.keys[k];
+            Ranking local = new Ranking(TOP_KEYS);
+            int[] map = new int[h];
+            for (int r = 0; r < rMax; r++) {
+                VideoScrambler.fillPermutationMap(map, h, r, s);
+                double score = partialScore(map, local.threshold(), (a, b) -> coarse.get(a, b));
+                if (!Double.isNaN(score)) local.offer(score, (r << 16) | s);
+            }
+            monitor.keysEvaluated(rMax);
+            if (local.size > 0) {
+                monitor.unitDone(local.keys[0] >>> 16, s, local.scores[0] / (h - 1));
+            }
+            return local;
+        }).collect(() -> new Ranking(TOP_KEYS), Ranking::merge, Ranking::merge);
+
+        // Passe 3 : clés retenues, pleine largeur (dans l'ordre du score grossier)
+        monitor.checkCancelled();
+        int[] map = new int[h];
+        Ranking finalKeys = new Ranking(keep);
+
+        for (int k = 0; k < keys.size; k++) {
+            int r = keys.keys[k] >>> 16;
+            int s = keys.keys[k] & 0xFFFF;
+            VideoScrambler.fillPermutationMap(map, h, r, s);
+            double score = partialScore(map, finalKeys.threshold(), fullCorrelation);
+            if (!Double.isNaN(score)) finalKeys.offer(score, keys.keys[k]);
+        }
+
+        monitor.keysEvaluated(keys.size);
+        if (finalKeys.size > 0) {
+            monitor.unitDone(finalKeys.keys[0] >>> 16, finalKeys.keys[0] & 0xFFFF, finalKeys.scores[0] / (h - 1));
+        }
+        return new Candidates(steps, finalKeys);
+    }
+
+    /**
+     * Corrélation (ou similarité, au plus 1) d'une paire de lignes de l'image chiffrée.
+     */
+    private interface PairCorrelation {
+        float get(int a, int b);
+    }
+
+    /**
+     * Score d'une carte de permutation, abandonné dès qu'il ne peut plus atteindre le seuil.
+     *
+     * @return La corrélation totale des paires adjacentes, ou NaN si la clé a été abandonnée.
+     */
+    private static double partialScore(int[] map, double threshold, PairCorrelation correlation) {
+        int h = map.length;
+        double totalCorrelation = 0;
+        for (int i = 0; i < h - 1; i++) {
+            totalCorrelation += correlation.get(map[i], map[i + 1]);
+            if (totalCorrelation + (h - 2 - i) < threshold) return Double.NaN;
+        }
+        return totalCorrelation;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compteurs d'un flux du serveur (ou du client de charge) : frames reçues et renvoyées,
+ * octets, latence par frame et débit depuis l'ouverture du flux.
+ */
+public class StreamStats {
+
+    private final String name;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param name Nom affiché du flux.
+     */
+    public StreamStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Une frame a été reçue (ou envoyée, côté client).
+     */
+    public void frameIn() {
+        framesIn.incrementAndGet();
+    }
+
+    /**
+     * Une frame traitée a été renvoyée (ou reçue, côté client).
+     *
+     * @param bytes Taille de la frame.
+     * @param latencyNanos Temps écoulé depuis la réception de la frame.
+     */
+    public void frameOut(long bytes, long latencyNanos) {
+        framesOut.incrementAndGet();
+        bytesOut.addAndGet(bytes);
+        latency.record(latencyNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getFramesIn() {
+        return framesIn.get();
+    }
+
+    public long getFramesOut() {
+        return framesOut.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return Frames renvoyées par seconde depuis l'ouverture du flux.
+     */
+    public double getFramesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return (seconds > 0) ? framesOut.get() / seconds : 0.0;
+    }
+
+    /**
+     * @return Mo renvoyés par seconde depuis l'ouverture du flux.
+     */
+    public double getMegabytesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return (seconds > 0) ? bytesOut.get() / seconds / (1024 * 1024) : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d in, %d out, %.1f frames/s, %.1f MB/s, latency %s",
+                name, framesIn.get(), framesOut.get(), getFramesPerSecond(), getMegabytesPerSecond(), latency);
+    }
+}
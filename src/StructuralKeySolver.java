@@ -0,0 +1,242 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Retrouve la clé (r, s) par l'algèbre de la permutation plutôt que par force brute.
+ *
+ * Dans le premier bloc (taille N = 2^k), la ligne chiffrée j contient la ligne d'origine
+ * (r + (2s+1)·j) mod N. Deux lignes d'origine consécutives sont donc toujours séparées de
+ * d = (2s+1)^-1 mod N positions dans l'image chiffrée. On apparie chaque ligne à sa plus proche
+ * voisine (corrélation maximale), on vote sur l'écart observé pour obtenir d (donc 2s+1),
+ * puis le maillon le plus faible de la chaîne reconstruite donne r (rupture N-1 -> 0).
+ * Les quelques clés candidates sont enfin départagées avec le score habituel.
+ *
+ * Le contrôle de cohérence final (score de la clé retenue comparé à celui des plus proches voisins)
+ * est calibré pour la corrélation de Pearson, centrée sur 0 pour des lignes sans rapport. Les
+ * métriques entières ({@link RowMetric}) ramènent les similarités dans [0, 1], où des lignes sans
+ * rapport obtiennent déjà 0,6 à 0,8 : avec elles, le contrôle est fait en Pearson, sur les mêmes paires.
+ */
+public final class StructuralKeySolver {
+
+    // Taille minimale du premier bloc pour que le vote ait un sens
+    private static final int MIN_BLOCK_SIZE = 16;
+    // Le vote gagnant doit réunir cette part des lignes votantes
+    private static final double MIN_VOTE_SHARE = 0.10;
+    // Nombre d'écarts les mieux votés et de maillons faibles essayés
+    private static final int TOP_OFFSETS = 3;
+    private static final int WEAK_LINKS = 3;
+    // La clé retenue doit retrouver au moins cette part de la corrélation des plus proches voisins
+    private static final double MIN_CONSISTENCY = 0.8;
+
+    private StructuralKeySolver() {
+    }
+
+    /**
+     * Ajuste la clé sur la matrice de similarité (corrélation de Pearson) d'une image chiffrée.
+     *
+     * @param similarity Matrice de similarité des lignes.
+     * @param rMax Nombre de valeurs possibles de r.
+     * @param sMax Nombre de valeurs possibles de s.
+     * @return {r, s}, ou null si l'ajustement est ambigu (recherche exhaustive nécessaire).
+     */
+    public static int[] solve(RowSimilarity similarity, int rMax, int sMax) {
+        return solve(similarity, null, rMax, sMax);
+    }
+
+    /**
+     * Ajuste la clé sur la matrice de similarité d'une image chiffrée, avec un contrôle de cohérence
+     * en corrélation de Pearson.
+     *
+     * @param similarity Matrice de similarité des lignes (toute métrique).
+     * @param pearsonRows Lignes d'analyse de la même image pour le contrôle de cohérence, ou null si
+     *                    {@code similarity} est déjà une corrélation de Pearson.
+     * @param rMax Nombre de valeurs possibles de r.
+     * @param sMax Nombre de valeurs possibles de s.
+     * @return {r, s}, ou null si l'ajustement est ambigu (recherche exhaustive nécessaire).
+     */
+    public static int[] solve(RowSimilarity similarity, AnalysisRows pearsonRows, int rMax, int sMax) {
+        int h = similarity.size();
+        int blockSize = Integer.highestOneBit(Math.max(h, 1));
+        if (blockSize < MIN_BLOCK_SIZE) return null;
+
+        int[] nearest = new int[blockSize];
+        int[] offsets = voteOffsets(similarity, blockSize, nearest);
+        if (offsets.length == 0) return null;
+
+        // Le voisin peut être la ligne d'origine suivante ou précédente : d = offset ou -offset
+        List<int[]> candidates = new ArrayList<>();
+        for (int offset : offsets) {
+            for (int d : new int[]{offset, blockSize - offset}) {
+                int step = inverseMod(d, blockSize);
+
+                // 2s+1 ≡ step (mod N)  <=>  s ≡ (step-1)/2 (mod N/2)
+                for (int s = (step - 1) / 2; s < sMax; s += blockSize / 2) {
+                    for (int rModBlock : weakestLinks(similarity, blockSize, d)) {
+                        for (int r = rModBlock; r < rMax; r += blockSize) {
+                            candidates.add(new int[]{r, s});
+                        }
+                    }
+                }
+            }
+        }
+        if (candidates.isEmpty()) return null;
+
+        // Départage des candidats avec le score complet (même critère que la force brute)
+        int[] map = new int[h];
+        int[] best = null;
+        double bestScore = -Double.MAX_VALUE;
+        for (int[] key : candidates) {
+            VideoScrambler.fillPermutationMap(map, h, key[0], key[1]);
+            double score = similarity.score(map);
+            if (score > bestScore) {
+                bestScore = score;
+                best = key;
+            }
+        }
+
+        // Avec la bonne clé, les lignes adjacentes sont (presque toujours) des plus proches voisines :
+        // un score moyen nettement inférieur signale un ajustement erroné (motif périodique...)
+        double keyCorrelation;
+        double nearestCorrelation;
+        if (pearsonRows == null) {
+            keyCorrelation = bestScore / (h - 1);
+            nearestCorrelation = nearestMean(similarity::get, nearest);
+        } else {
+            VideoScrambler.fillPermutationMap(map, h, best[0], best[1]);
+            keyCorrelation = pearsonRows.adjacentScore(map);
+            nearestCorrelation = nearestMean(pearsonRows::correlation, nearest);
+        }
+        if (keyCorrelation < MIN_CONSISTENCY * nearestCorrelation) return null;
+        return best;
+    }
+
+    /**
+     * Similarité d'une paire de lignes de l'image chiffrée.
+     */
+    private interface PairSimilarity {
+        float get(int a, int b);
+    }
+
+    /**
+     * @return Similarité moyenne entre chaque ligne du premier bloc et sa plus proche voisine.
+     */
+    private static double nearestMean(PairSimilarity pairs, int[] nearest) {
+        double sum = 0;
+        int count = 0;
+        for (int a = 0; a < nearest.length; a++) {
+            if (nearest[a] < 0) continue;
+            sum += pairs.get(a, nearest[a]);
+            count++;
+        }
+        return (count > 0) ? sum / count : 0;
+    }
+
+    /**
+     * Vote sur l'écart (modulo N) entre chaque ligne du premier bloc et sa plus proche voisine.
+     *
+     * @param nearestRows Reçoit la plus proche voisine de chaque ligne (-1 pour une ligne uniforme).
+     * @return Les écarts canoniques (impairs, au plus N/2) les mieux votés ; vide si le vote est ambigu.
+     */
+    private static int[] voteOffsets(RowSimilarity similarity, int blockSize, int[] nearestRows) {
+        int[] votes = new int[blockSize / 2 + 1];
+        int voters = 0;
+
+        for (int a = 0; a < blockSize; a++) {
+            int nearest = -1;
+            float bestCorrelation = 0f;
+            for (int b = 0; b < blockSize; b++) {
+                if (b == a) continue;
+                float correlation = similarity.get(a, b);
+                if (correlation > bestCorrelation) {
+                    bestCorrelation = correlation;
+                    nearest = b;
+                }
+            }
+            // Ligne uniforme (norme nulle) : aucune information
+            nearestRows[a] = nearest;
+            if (nearest < 0) continue;
+
+            int diff = Math.floorMod(nearest - a, blockSize);
+            // Un inverse modulo 2^k est toujours impair : les écarts pairs sont du bruit
+            if ((diff & 1) == 0) continue;
+            votes[Math.min(diff, blockSize - diff)]++;
+            voters++;
+        }
+
+        // Sélection des TOP_OFFSETS écarts les plus votés
+        int[] top = new int[TOP_OFFSETS];
+        int found = 0;
+        for (int c = 1; c < votes.length; c += 2) {
+            if (votes[c] == 0) continue;
+            int k = Math.min(found, TOP_OFFSETS - 1);
+            if (found == TOP_OFFSETS && votes[c] <= votes[top[k]]) continue;
+            // Insertion triée (votes décroissants)
+            while (k > 0 && votes[top[k - 1]] < votes[c]) {
+                top[k] = top[k - 1];
+                k--;
+            }
+            top[k] = c;
+            if (found < TOP_OFFSETS) found++;
+        }
+
+        if (found == 0 || votes[top[0]] < MIN_VOTE_SHARE * voters) {
+            return new int[0];
+        }
+        return Arrays.copyOf(top, found);
+    }
+
+    /**
+     * Parcourt le premier bloc dans l'ordre d'origine supposé (pas d) et renvoie les valeurs
+     * de r (modulo N) correspondant aux maillons les plus faibles de cette chaîne circulaire.
+     * Depuis la position 0, le t-ième maillon relie les lignes d'origine r+t et r+t+1 : la rupture
+     * N-1 -> 0 se trouve en t = N-1-r.
+     */
+    private static int[] weakestLinks(RowSimilarity similarity, int blockSize, int d) {
+        int count = Math.min(WEAK_LINKS, blockSize);
+        int[] links = new int[count];
+        float[] linkScores = new float[count];
+        Arrays.fill(linkScores, Float.MAX_VALUE);
+
+        int position = 0;
+        for (int t = 0; t < blockSize; t++) {
+            int next = (position + d) & (blockSize - 1);
+            float correlation = similarity.get(position, next);
+
+            // Insertion dans la liste triée des maillons les plus faibles
+            for (int k = 0; k < count; k++) {
+                if (correlation < linkScores[k]) {
+                    System.arraycopy(linkScores, k, linkScores, k + 1, count - k - 1);
+                    System.arraycopy(links, k, links, k + 1, count - k - 1);
+                    linkScores[k] = correlation;
+                    links[k] = t;
+                    break;
+                }
+            }
+            position = next;
+        }
+
+        int[] rValues = new int[count];
+        for (int k = 0; k < count; k++) {
+            rValues[k] = (blockSize - 1 - links[k]) & (blockSize - 1);
+        }
+        return rValues;
+    }
+
+    /**
+     * Inverse d'un nombre impair modulo une puissance de 2 (itérations de Newton).
+     */
+    static int inverseMod(int d, int blockSize) {
+        int x = d; // Exact sur 3 bits : d·d ≡ 1 (mod 8) pour tout d impair
+        for (int i = 0; i < 4; i++) {
+            x *= 2 - d * x;
+        }
+        return x & (blockSize - 1);
+    }
+}
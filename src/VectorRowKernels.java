@@ -0,0 +1,63 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Noyaux de calcul vectoriels (SIMD) basés sur jdk.incubator.vector.
+ * Chargée uniquement par réflexion depuis {@link RowKernels} quand le module est présent.
+ */
+final class VectorRowKernels implements RowKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float sum(float[] v) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int upper = SPECIES.loopBound(v.length);
+        for (; i < upper; i += SPECIES.length()) {
+            acc = acc.add(FloatVector.fromArray(SPECIES, v, i));
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < v.length; i++) sum += v[i];
+        return sum;
+    }
+
+    @Override
+    public float centerAndSquare(float[] v, float mean) {
+        FloatVector means = FloatVector.broadcast(SPECIES, mean);
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int upper = SPECIES.loopBound(v.length);
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector centered = FloatVector.fromArray(SPECIES, v, i).sub(means);
+            centered.intoArray(v, i);
+            acc = centered.fma(centered, acc);
+        }
+        float sumSq = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < v.length; i++) {
+            v[i] -= mean;
+            sumSq += v[i] * v[i];
+        }
+        return sumSq;
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int upper = SPECIES.loopBound(a.length);
+        for (; i < upper; i += SPECIES.length()) {
+            acc = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc);
+        }
+        float dotProduct = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) dotProduct += a[i] * b[i];
+        return dotProduct;
+    }
+}
@@ -4,11 +4,10 @@
  * Groupe  : S5-A2
  */
 
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.stream.IntStream;
 
 /**
@@ -18,14 +17,57 @@ import java.util.stream.IntStream;
 public class VideoScrambler {
 
     // Largeur réduite pour l'analyse statistique rapide (Force Brute)
-    private static final int ANALYSIS_WIDTH = 64;
+    // Les noyaux float/SIMD de RowKernels permettent une largeur plus grande, plus robuste au bruit
+    static final int ANALYSIS_WIDTH = 128;
+    // Largeur de la passe grossière de la recherche par étapes
+    private static final int COARSE_ANALYSIS_WIDTH = 16;
 
-    private static final int R_MAX = 256;
-    private static final int S_MAX = 128;
+    /**
+     * Méthodes de cassage de clé disponibles.
+     */
+    public enum CrackMethod {
+        /** Ajustement algébrique de (r, s), repli sur la force brute si ambigu. */
+        STRUCTURAL,
+        /** Passe grossière sur toutes les clés puis passe fine sur les meilleures. */
+        STAGED,
+        /** Évaluation complète de toutes les clés. */
+        EXHAUSTIVE
+    }
+
+    /**
+     * Métriques de score des paires de lignes pour le cassage de clé.
+     * Les métriques entières travaillent sur les octets en niveaux de gris ({@link GreyRows}) :
+     * plus rapides et plus légères en mémoire, au prix d'une discrimination parfois moindre.
+     */
+    public enum ScoringMetric {
+        /** Corrélation de Pearson sur lignes flottantes centrées (la plus robuste). */
+        PEARSON(null),
+        /** Somme des différences absolues (la plus rapide). */
+        SAD(new SadRowMetric()),
+        /** Somme des carrés des différences. */
+        SSD(new SsdRowMetric()),
+        /** Continuité des gradients horizontaux (insensible aux dégradés verticaux). */
+        GRADIENT(new GradientRowMetric());
+
+        private final RowMetric rowMetric;
+
+        ScoringMetric(RowMetric rowMetric) {
+            this.rowMetric = rowMetric;
+        }
+
+        /**
+         * @return La métrique entière, ou null pour Pearson.
+         */
+        public RowMetric rowMetric() {
+            return rowMetric;
+        }
+    }
 
     /**
      * Génère la carte de permutation des lignes selon la clé (r, s).
      * Utilise une approche récursive par blocs de puissance de 2.
+     * Alloue un nouveau tableau : pour un usage répété, préférer {@link PermutationCache}
+     * ou {@link #fillPermutationMap(int[], int, int, int)}.
      *
      * @param height Hauteur de l'image.
      * @param r Composante R de la clé (décalage).
@@ -34,8 +76,34 @@ public class VideoScrambler {
      */
     public static int[] getPermutationMap(int height, int r, int s) {
         int[] map = new int[height];
-        for (int i = 0; i < height; i++) map[i] = i;
+        fillPermutationMap(map, height, r, s);
+        return map;
+    }
 
+    /**
+     * Génère la carte de permutation d'une clé, en vérifiant qu'elle appartient à l'espace de clés donné.
+     *
+     * @param height Hauteur de l'image.
+     * @param r Composante R de la clé (décalage).
+     * @param s Composante S de la clé (pas).
+     * @param keySpace Espace des clés autorisées.
+     * @return Un tableau où tab[i] est la nouvelle position de la ligne i.
+     * @throws IllegalArgumentException si la clé est hors de l'espace.
+     */
+    public static int[] getPermutationMap(int height, int r, int s, KeySpace keySpace) {
+        keySpace.check(r, s);
+        return getPermutationMap(height, r, s);
+    }
+
+    /**
+     * Remplit un tableau existant avec la carte de permutation de la clé (r, s), sans allocation.
+     *
+     * @param map Tableau de destination (au moins {@code height} cases).
+     * @param height Hauteur de l'image.
+     * @param r Composante R de la clé (décalage).
+     * @param s Composante S de la clé (pas).
+     */
+    public static void fillPermutationMap(int[] map, int height, int r, int s) {
         int currentStart = 0;
         int remainingLines = height;
 
@@ -49,12 +117,11 @@ public class VideoScrambler {
             currentStart += blockSize;
             remainingLines -= blockSize;
         }
-        return map;
     }
 
     /**
      * Applique la formule de permutation sur un sous-bloc spécifique du tableau.
-     * Formule : pos = (r + (2s+1) * id) % size.
+     * Formule : pos = (r + (2s+1) * id) % size, écrite directement sans tableau temporaire.
      *
      * @param map Tableau de mapping global.
      * @param startIdx Indice de début du bloc à traiter.
@@ -63,18 +130,17 @@ public class VideoScrambler {
      * @param s Clé S.
      */
     private static void permuteBlock(int[] map, int startIdx, int size, int r, int s) {
-        if (size <= 1) return;
-
-        int[] tempValues = new int[size];
-        for (int i = 0; i < size; i++) {
-            tempValues[i] = map[startIdx + i];
+        if (size <= 1) {
+            if (size == 1) map[startIdx] = startIdx;
+            return;
         }
 
         long step = (2L * s + 1);
+        long mask = size - 1; // size est une puissance de 2 : le modulo devient un masque
 
         for (int i = 0; i < size; i++) {
-            int newPos = (int) ((r + step * i) % size);
-            map[startIdx + newPos] = tempValues[i];
+            int newPos = (int) ((r + step * i) & mask);
+            map[startIdx + newPos] = startIdx + i;
         }
     }
 
@@ -88,107 +154,457 @@ public class VideoScrambler {
      * @return Une nouvelle Mat contenant l'image traitée.
      */
     public static Mat processImage(Mat src, int r, int s, boolean unscrambleMode) {
-        int height = src.height();
         Mat dst = new Mat(src.size(), src.type());
+        processImage(src, dst, r, s, unscrambleMode);
+        return dst;
+    }
 
-        int[] map = getPermutationMap(height, r, s);
-
-        for (int i = 0; i < height; i++) {
-            if (unscrambleMode) {
-                // Déchiffrement : Destination[i] reçoit Source[map[i]]
-                Mat sourceRow = src.row(map[i]);
-                Mat destRow = dst.row(i);
-                sourceRow.copyTo(destRow);
-            } else {
-                // Chiffrement : Destination[map[i]] reçoit Source[i]
-                Mat sourceRow = src.row(i);
-                Mat destRow = dst.row(map[i]);
-                sourceRow.copyTo(destRow);
+    /**
+     * Traite une image OpenCV pour la chiffrer ou la déchiffrer, dans une Mat fournie par l'appelant.
+     * La destination est (ré)allouée uniquement si sa taille ou son type ne correspondent pas,
+     * ce qui permet de réutiliser la même Mat d'une frame à l'autre.
+     *
+     * @param src Image source.
+     * @param dst Image destination (distincte de la source).
+     * @param r Clé R.
+     * @param s Clé S.
+     * @param unscrambleMode Si true, effectue l'opération inverse (déchiffrement).
+     */
+    public static void processImage(Mat src, Mat dst, int r, int s, boolean unscrambleMode) {
+        int height = src.height();
+        dst.create(src.rows(), src.cols(), src.type());
+
+        // Les deux modes se ramènent à une lecture : Destination[i] reçoit Source[rowSource[i]]
+        // Déchiffrement : carte directe / Chiffrement : carte inverse
+        PermutationCache.Entry maps = PermutationCache.get(height, r, s);
+        int[] rowSource = unscrambleMode ? maps.forward() : maps.inverse();
+
+        applyRowMap(src, dst, rowSource, null);
+    }
+
+    /**
+     * Variante avec stéganographie, sans copie supplémentaire de la frame.
+     * Au chiffrement, la clé est écrite dans le pixel (0,0) du tampon de sortie pendant la
+     * permutation, avant son unique copie vers la destination. Au déchiffrement, la clé est lue
+     * dans le pixel (0,0) de la source (r et s sont alors ignorés).
+     *
+     * @param src Image source (couleur, 8 bits).
+     * @param dst Image destination (distincte de la source).
+     * @param r Clé R (chiffrement).
+     * @param s Clé S (chiffrement).
+     * @param unscrambleMode Si true, effectue l'opération inverse (déchiffrement).
+     * @param stego Si true, cache la clé (chiffrement) ou la lit (déchiffrement).
+     * @return La clé {r, s} appliquée.
+     */
+    public static int[] processImage(Mat src, Mat dst, int r, int s, boolean unscrambleMode, boolean stego) {
+        if (!stego) {
+            processImage(src, dst, r, s, unscrambleMode);
+            return new int[]{r, s};
+        }
+        if (unscrambleMode) {
+            int[] key = extractKey(src);
+            processImage(src, dst, key[0], key[1], true);
+            return key;
+        }
+
+        // Seule une clé de 8 + 7 bits peut être cachée : refus avant tout traitement
+        KeySpace.DEFAULT.check(r, s);
+        dst.create(src.rows(), src.cols(), src.type());
+        applyRowMap(src, dst, PermutationCache.get(src.height(), r, s).inverse(), keyBits(r, s));
+        return new int[]{r, s};
+    }
+
+    /**
+     * Change la clé d'une image chiffrée en une seule copie : déchiffrement avec (r1, s1) et
+     * chiffrement avec (r2, s2) composés en une seule permutation ({@link PermutationCache#rekey}),
+     * sans image intermédiaire.
+     *
+     * @param src Image chiffrée avec (r1, s1).
+     * @param dst Image destination (distincte de la source), chiffrée avec (r2, s2) en sortie.
+     * @param r1 Ancienne clé R.
+     * @param s1 Ancienne clé S.
+     * @param r2 Nouvelle clé R.
+     * @param s2 Nouvelle clé S.
+     * @param stego Si true, la nouvelle clé est cachée dans le pixel (0,0) du résultat.
+     */
+    public static void rekeyImage(Mat src, Mat dst, int r1, int s1, int r2, int s2, boolean stego) {
+        dst.create(src.rows(), src.cols(), src.type());
+        applyRowMap(src, dst, PermutationCache.rekey(src.height(), r1, s1, r2, s2), stego ? keyBits(r2, s2) : null);
+    }
+
+    /**
+     * Destination[i] reçoit Source[rowSource[i]].
+     *
+     * @param keyBits Bits de clé à cacher dans le pixel (0,0) de la destination ({@link #keyBits}), ou null.
+     */
+    private static void applyRowMap(Mat src, Mat dst, int[] rowSource, int[] keyBits) {
+        // Copie directe d'une image à l'autre, une copie native par suite de lignes consécutives
+        if (ParallelRowPermuter.shouldSplit(src.total() * src.elemSize())) {
+            // Très grandes frames : tranches de lignes réparties sur plusieurs cœurs
+            ParallelRowPermuter.permute(src, dst, rowSource);
+        } else {
+            ParallelRowPermuter.copyRows(src, dst, rowSource, 0, src.height());
+        }
+        if (keyBits != null) {
+            embedKeyBits(dst, keyBits);
+        }
+    }
+
+    /**
+     * Chiffre ou déchiffre des plans d'octets empilés (par exemple une frame Y4M projetée en mémoire),
+     * directement de la source vers la destination : une seule copie, sans passer par une Mat.
+     * Chaque plan a {@code height} lignes et reçoit la même permutation.
+     *
+     * @param src Plans source (position 0).
+     * @param dst Plans destination de même taille, distincts de la source (position 0).
+     * @param rowBytes Taille d'une ligne en octets.
+     * @param height Nombre de lignes d'un plan.
+     * @param planes Nombre de plans.
+     * @param r Clé R.
+     * @param s Clé S.
+     * @param unscrambleMode Si true, effectue l'opération inverse (déchiffrement).
+     */
+    public static void processPlanes(ByteBuffer src, ByteBuffer dst, int rowBytes, int height, int planes,
+                                     int r, int s, boolean unscrambleMode) {
+        PermutationCache.Entry maps = PermutationCache.get(height, r, s);
+        permutePlanes(src, dst, rowBytes, height, planes, unscrambleMode ? maps.forward() : maps.inverse());
+    }
+
+    /**
+     * Change la clé de plans d'octets chiffrés en une seule copie (voir {@link #rekeyImage}).
+     *
+     * @see #processPlanes
+     */
+    public static void rekeyPlanes(ByteBuffer src, ByteBuffer dst, int rowBytes, int height, int planes,
+                                   int r1, int s1, int r2, int s2) {
+        permutePlanes(src, dst, rowBytes, height, planes, PermutationCache.rekey(height, r1, s1, r2, s2));
+    }
+
+    private static void permutePlanes(ByteBuffer src, ByteBuffer dst, int rowBytes, int height, int planes,
+                                      int[] rowSource) {
+        int planeBytes = rowBytes * height;
+        for (int p = 0; p < planes; p++) {
+            int base = p * planeBytes;
+            for (int i = 0; i < height; i++) {
+                dst.put(base + i * rowBytes, src, base + rowSource[i] * rowBytes, rowBytes);
             }
         }
-        return dst;
     }
 
     /**
      * Recherche la clé (r, s) par force brute en utilisant la corrélation de Pearson.
-     * Optimisé via redimensionnement et multi-threading.
+     * Optimisé via redimensionnement, matrice de similarité pré-calculée et multi-threading.
      *
      * @param scrambledImage Image chiffrée à analyser.
      * @return Un tableau contenant {meilleur_R, meilleur_S}.
      */
     public static int[] crackKey(Mat scrambledImage) {
-        // 1. Optimisation : Travail sur image réduite en niveaux de gris
-        Mat analysisMat = new Mat();
-        Imgproc.resize(scrambledImage, analysisMat, new Size(ANALYSIS_WIDTH, scrambledImage.height()));
+        // 1. Corrélations de toutes les paires de lignes, calculées une seule fois
+        RowSimilarity similarity = RowSimilarity.fromImage(scrambledImage, ANALYSIS_WIDTH);
+        return crackKey(similarity);
+    }
 
-        if (analysisMat.channels() > 1) {
-            Imgproc.cvtColor(analysisMat, analysisMat, Imgproc.COLOR_BGR2GRAY);
-        }
-        analysisMat.convertTo(analysisMat, CvType.CV_64F);
+    /**
+     * Recherche la clé (r, s) par force brute sur une matrice de similarité déjà construite.
+     * Chaque clé est évaluée en O(h) lectures de la matrice.
+     *
+     * @param similarity Matrice de similarité des lignes de l'image chiffrée.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKey(RowSimilarity similarity) {
+        return crackKey(similarity, CrackMonitor.NONE);
+    }
 
-        int h = analysisMat.rows();
-        int w = analysisMat.cols();
+    /**
+     * Recherche la clé (r, s) par force brute, annulable, une unité de travail par valeur de s.
+     *
+     * @param similarity Matrice de similarité des lignes de l'image chiffrée.
+     * @param monitor Annulation et progression.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKey(RowSimilarity similarity, CrackMonitor monitor) {
+        return crackKey(similarity, KeySpace.DEFAULT, monitor);
+    }
 
-        // 2. Pré-calculs statistiques (centrage et norme inverse) pour accélérer Pearson
-        double[][] rowData = new double[h][w];
-        double[] rowInvNorms = new double[h];
+    /**
+     * Recherche la clé (r, s) par force brute dans un espace de clés donné.
+     *
+     * @param similarity Matrice de similarité des lignes de l'image chiffrée.
+     * @param keySpace Espace des clés à explorer.
+     * @param monitor Annulation et progression.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKey(RowSimilarity similarity, KeySpace keySpace, CrackMonitor monitor) {
+        KeySearchResult result = searchKey(similarity, keySpace, monitor);
+        System.out.println("Clé trouvée : " + result);
+        return result.key();
+    }
 
-        for (int i = 0; i < h; i++) {
-            analysisMat.row(i).get(0, 0, rowData[i]);
+    /**
+     * Recherche exhaustive renvoyant aussi la meilleure clé concurrente (marge de confiance) :
+     * la meilleure clé d'un autre pas, hors pas équivalents ou miroirs
+     * ({@link KeySearchResult#relatedSteps}), qui ne font que décaler ou renverser l'image.
+     *
+     * @param similarity Matrice de similarité des lignes de l'image chiffrée.
+     * @param monitor Annulation et progression.
+     * @return La meilleure clé et sa concurrente.
+     */
+    public static KeySearchResult searchKey(RowSimilarity similarity, CrackMonitor monitor) {
+        return searchKey(similarity, KeySpace.DEFAULT, monitor);
+    }
 
-            double sum = 0;
-            for (double v : rowData[i]) sum += v;
-            double mean = sum / w;
+    /**
+     * Recherche exhaustive dans un espace de clés donné, réduit aux clés distinctes pour la hauteur
+     * de l'image ({@link KeySpace#effectiveFor}) : la clé renvoyée est la plus petite de sa classe.
+     *
+     * @param similarity Matrice de similarité des lignes de l'image chiffrée.
+     * @param keySpace Espace des clés à explorer.
+     * @param monitor Annulation et progression.
+     * @return La meilleure clé et sa concurrente.
+     */
+    public static KeySearchResult searchKey(RowSimilarity similarity, KeySpace keySpace, CrackMonitor monitor) {
+        KeySpace effective = keySpace.effectiveFor(similarity.size());
+        return searchKey(similarity, effective.rMax(), 0, effective.sMax(), monitor);
+    }
 
-            double sumSqDiff = 0;
-            for (int j = 0; j < w; j++) {
-                rowData[i][j] -= mean;
-                sumSqDiff += rowData[i][j] * rowData[i][j];
+    /**
+     * Recherche exhaustive sur une tranche de l'espace des clés : toutes les valeurs de r pour
+     * s dans [sFrom, sTo). Unité de calcul de la recherche répartie ({@link CrackCoordinator}) :
+     * les résultats de tranches disjointes se combinent avec {@link KeySearchResult#merge}.
+     *
+     * @param similarity Matrice de similarité des lignes de l'image chiffrée.
+     * @param rMax Nombre de valeurs de r.
+     * @param sFrom Première valeur de s.
+     * @param sTo Valeur de s de fin (exclue).
+     * @param monitor Annulation et progression (une unité par valeur de s).
+     * @return La meilleure clé de la tranche et sa concurrente (meilleure clé d'un autre pas de la tranche).
+     */
+    public static KeySearchResult searchKey(RowSimilarity similarity, int rMax, int sFrom, int sTo,
+                                            CrackMonitor monitor) {
+        int h = similarity.size();
+        monitor.begin(sTo - sFrom);
+
+        // 2. Recherche parallèle : meilleur r de chaque s
+        int steps = sTo - sFrom;
+        double[] stepScores = new double[steps];
+        int[] stepBestR = new int[steps];
+        IntStream.range(sFrom, sTo).parallel().forEach(s -> {
+            monitor.checkCancelled();
+            int[] map = new int[h]; // Réutilisé pour toutes les valeurs de r
+            double bestForStep = -Double.MAX_VALUE;
+            int bestR = 0;
+
+            for (int r = 0; r < rMax; r++) {
+                fillPermutationMap(map, h, r, s);
+
+                // Cohérence entre lignes adjacentes reconstruites (lecture de la matrice)
+                double score = similarity.score(map);
+                if (score > bestForStep) {
+                    bestForStep = score;
+                    bestR = r;
+                }
             }
-            rowInvNorms[i] = (sumSqDiff > 1e-9) ? 1.0 / Math.sqrt(sumSqDiff) : 0.0;
+            stepScores[s - sFrom] = bestForStep;
+            stepBestR[s - sFrom] = bestR;
+            monitor.keysEvaluated(rMax);
+            monitor.unitDone(bestR, s, bestForStep / Math.max(1, h - 1));
+        });
+
+        // 3. Meilleur s, puis concurrente : le meilleur s qui n'en est ni un équivalent ni le miroir
+        int best = 0;
+        for (int k = 1; k < steps; k++) {
+            if (stepScores[k] > stepScores[best]) best = k;
+        }
+        int second = -1;
+        for (int k = 0; k < steps; k++) {
+            if (KeySearchResult.relatedSteps(sFrom + best, sFrom + k, h)) continue;
+            if (second < 0 || stepScores[k] > stepScores[second]) second = k;
         }
 
-        // 3. Recherche parallèle
-        class Result {
-            double score = -Double.MAX_VALUE;
-            int r = 0, s = 0;
+        if (second < 0) {
+            return new KeySearchResult(stepBestR[best], sFrom + best, stepScores[best], 0, 0, -Double.MAX_VALUE);
         }
+        return new KeySearchResult(stepBestR[best], sFrom + best, stepScores[best],
+                stepBestR[second], sFrom + second, stepScores[second]);
+    }
 
-        Result bestResult = IntStream.range(0, S_MAX).parallel().mapToObj(s -> {
-            Result localBest = new Result();
+    /**
+     * Recherche la clé commune à plusieurs frames chiffrées avec la même clé : les corrélations
+     * de lignes sont moyennées sur toutes les frames ({@link SimilarityAccumulator}), puis
+     * explorées par une seule recherche exhaustive.
+     *
+     * @param scrambledFrames Frames de même hauteur, chiffrées avec la même clé.
+     * @param monitor Annulation et progression.
+     * @return La meilleure clé et sa concurrente.
+     */
+    public static KeySearchResult crackKey(List<Mat> scrambledFrames, CrackMonitor monitor) {
+        SimilarityAccumulator accumulator = new SimilarityAccumulator(ANALYSIS_WIDTH);
+        for (Mat frame : scrambledFrames) {
+            monitor.checkCancelled();
+            accumulator.add(frame);
+        }
+        RowSimilarity similarity = accumulator.toSimilarity();
+        if (similarity == null) throw new IllegalArgumentException("Aucune frame à analyser");
 
-            for (int r = 0; r < R_MAX; r++) {
-                int[] map = getPermutationMap(h, r, s);
-                double totalCorrelation = 0;
+        KeySearchResult result = searchKey(similarity, monitor);
+        System.out.println("Clé trouvée (" + scrambledFrames.size() + " frames) : " + result);
+        return result;
+    }
 
-                // Calcul de la cohérence entre lignes adjacentes reconstruites
-                for (int i = 0; i < h - 1; i++) {
-                    int rowIdxA = map[i];
-                    int rowIdxB = map[i + 1];
+    /**
+     * Recherche la clé (r, s) avec la méthode choisie.
+     *
+     * @param scrambledImage Image chiffrée à analyser.
+     * @param method Méthode de cassage.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKey(Mat scrambledImage, CrackMethod method) {
+        return crackKey(scrambledImage, method, CrackMonitor.NONE);
+    }
 
-                    double dotProduct = 0;
-                    double[] vecA = rowData[rowIdxA];
-                    double[] vecB = rowData[rowIdxB];
+    /**
+     * Recherche la clé (r, s) avec la méthode choisie, annulable et avec suivi de progression
+     * (voir {@link CrackService}).
+     *
+     * @param scrambledImage Image chiffrée à analyser.
+     * @param method Méthode de cassage.
+     * @param monitor Annulation et progression.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKey(Mat scrambledImage, CrackMethod method, CrackMonitor monitor) {
+        return crackKey(scrambledImage, method, ScoringMetric.PEARSON, monitor);
+    }
 
-                    for (int k = 0; k < w; k++) {
-                        dotProduct += vecA[k] * vecB[k];
-                    }
-                    totalCorrelation += dotProduct * rowInvNorms[rowIdxA] * rowInvNorms[rowIdxB];
-                }
+    /**
+     * Recherche la clé (r, s) avec la méthode et la métrique de score choisies, annulable.
+     * La métrique ne change que la matrice de similarité : les recherches restent identiques.
+     *
+     * @param scrambledImage Image chiffrée à analyser.
+     * @param method Méthode de cassage.
+     * @param metric Métrique de score des paires de lignes.
+     * @param monitor Annulation et progression.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKey(Mat scrambledImage, CrackMethod method, ScoringMetric metric, CrackMonitor monitor) {
+        return crackKey(scrambledImage, method, metric, KeySpace.DEFAULT, monitor);
+    }
 
-                if (totalCorrelation > localBest.score) {
-                    localBest.score = totalCorrelation;
-                    localBest.r = r;
-                    localBest.s = s;
-                }
-            }
-            return localBest;
-        }).reduce(new Result(), (a, b) -> (a.score > b.score) ? a : b);
+    /**
+     * Recherche la clé (r, s) dans un espace de clés donné (par exemple r et s sur 16 bits).
+     * Seules les clés distinctes pour la hauteur de l'image sont évaluées ({@link KeySpace#effectiveFor}).
+     *
+     * @param scrambledImage Image chiffrée à analyser.
+     * @param method Méthode de cassage.
+     * @param metric Métrique de score des paires de lignes.
+     * @param keySpace Espace des clés à explorer.
+     * @param monitor Annulation et progression.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKey(Mat scrambledImage, CrackMethod method, ScoringMetric metric, KeySpace keySpace,
+                                 CrackMonitor monitor) {
+        switch (method) {
+            case STRUCTURAL: return crackKeyStructural(scrambledImage, metric, keySpace, monitor);
+            case STAGED:     return crackKeyStaged(scrambledImage, metric, keySpace, monitor);
+            default:
+                RowSimilarity similarity = RowSimilarity.fromImage(scrambledImage, ANALYSIS_WIDTH, metric);
+                monitor.checkCancelled();
+                return crackKey(similarity, keySpace, monitor);
+        }
+    }
+
+    /**
+     * Recherche la clé (r, s) par étapes ({@link StagedKeySearch}) : passe grossière sur un
+     * échantillon de lignes en largeur réduite, puis passe fine sur les meilleures clés.
+     *
+     * @param scrambledImage Image chiffrée à analyser.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKeyStaged(Mat scrambledImage) {
+        return crackKeyStaged(scrambledImage, ScoringMetric.PEARSON, KeySpace.DEFAULT, CrackMonitor.NONE);
+    }
+
+    /**
+     * Classements intermédiaires de la recherche par étapes (Pearson, espace par défaut), pour vérifier
+     * ses passes ({@link StagedKeySearch#candidates}).
+     *
+     * @param scrambledImage Image chiffrée à analyser.
+     * @return [0] : valeurs de s retenues par la passe 1 ; [1..] : clés {r, s} de la passe 3, par score décroissant.
+     */
+    public static int[][] crackKeyStagedCandidates(Mat scrambledImage) {
+        KeySpace effective = KeySpace.DEFAULT.effectiveFor(scrambledImage.height());
+        RowSimilarity coarse = RowSimilarity.fromImage(scrambledImage, COARSE_ANALYSIS_WIDTH, ScoringMetric.PEARSON);
+        AnalysisRows fullRows = AnalysisRows.fromImage(scrambledImage, ANALYSIS_WIDTH);
+        return StagedKeySearch.candidates(fullRows, coarse, effective.rMax(), effective.sMax());
+    }
 
-        System.out.println("Clé trouvée : R=" + bestResult.r + ", S=" + bestResult.s +
-                " (Score: " + String.format("%.2f", bestResult.score) + ")");
+    private static int[] crackKeyStaged(Mat scrambledImage, ScoringMetric metric, KeySpace keySpace,
+                                        CrackMonitor monitor) {
+        KeySpace effective = keySpace.effectiveFor(scrambledImage.height());
+        RowSimilarity coarse = RowSimilarity.fromImage(scrambledImage, COARSE_ANALYSIS_WIDTH, metric);
+        int[] key;
+        if (metric.rowMetric() == null) {
+            AnalysisRows fullRows = AnalysisRows.fromImage(scrambledImage, ANALYSIS_WIDTH);
+            monitor.checkCancelled();
+            key = StagedKeySearch.search(fullRows, coarse, effective.rMax(), effective.sMax(), monitor);
+        } else {
+            GreyRows fullRows = GreyRows.fromImage(scrambledImage, ANALYSIS_WIDTH);
+            monitor.checkCancelled();
+            key = StagedKeySearch.search(fullRows, metric.rowMetric(), coarse, effective.rMax(), effective.sMax(),
+                    monitor);
+        }
+        System.out.println("Clé trouvée (recherche par étapes) : R=" + key[0] + ", S=" + key[1]);
+        return key;
+    }
+
+    /**
+     * Recherche la clé (r, s) par ajustement structurel ({@link StructuralKeySolver}) :
+     * le coût ne dépend plus de la taille de l'espace des clés.
+     * Repli sur la force brute si l'ajustement est ambigu (image trop pauvre en détails).
+     *
+     * @param scrambledImage Image chiffrée à analyser.
+     * @return Un tableau contenant {meilleur_R, meilleur_S}.
+     */
+    public static int[] crackKeyStructural(Mat scrambledImage) {
+        return crackKeyStructural(scrambledImage, ScoringMetric.PEARSON, KeySpace.DEFAULT, CrackMonitor.NONE);
+    }
+
+    private static int[] crackKeyStructural(Mat scrambledImage, ScoringMetric metric, KeySpace keySpace,
+                                            CrackMonitor monitor) {
+        RowSimilarity similarity = RowSimilarity.fromImage(scrambledImage, ANALYSIS_WIDTH, metric);
+        monitor.checkCancelled();
+        monitor.begin(1);
+
+        KeySpace effective = keySpace.effectiveFor(similarity.size());
+        // Métrique entière : contrôle de cohérence de l'ajustement en Pearson (seuil calibré pour elle)
+        AnalysisRows pearsonRows = (metric.rowMetric() == null) ? null
+                : AnalysisRows.fromImage(scrambledImage, ANALYSIS_WIDTH);
+        int[] key = StructuralKeySolver.solve(similarity, pearsonRows, effective.rMax(), effective.sMax());
+        if (key == null) {
+            // Ajustement ambigu : la force brute rend compte elle-même de sa progression au moniteur
+            return crackKey(similarity, keySpace, monitor);
+        }
 
-        return new int[]{bestResult.r, bestResult.s};
+        int h = similarity.size();
+        monitor.keysEvaluated(1);
+        monitor.unitDone(key[0], key[1],
+                similarity.score(PermutationCache.forward(h, key[0], key[1])) / Math.max(1, h - 1));
+        System.out.println("Clé trouvée (ajustement structurel) : R=" + key[0] + ", S=" + key[1]);
+        return key;
+    }
+
+    /**
+     * Score de plausibilité d'une clé sur une image chiffrée : corrélation moyenne entre les lignes
+     * adjacentes de l'image déchiffrée avec cette clé (même critère que {@link #crackKey(Mat)}).
+     * Coûte h produits scalaires, contre 32 768 clés × h pour une recherche complète.
+     *
+     * @param scrambledImage Image chiffrée.
+     * @param r Clé R testée.
+     * @param s Clé S testée.
+     * @return Une corrélation moyenne entre -1 et 1 (proche de 1 pour la bonne clé).
+     */
+    public static double keyScore(Mat scrambledImage, int r, int s) {
+        AnalysisRows rows = AnalysisRows.fromImage(scrambledImage, ANALYSIS_WIDTH);
+        return rows.adjacentScore(PermutationCache.forward(rows.height(), r, s));
     }
 
     /**
@@ -202,40 +618,88 @@ public class VideoScrambler {
      */
     public static Mat embedKey(Mat src, int r, int s) {
         Mat dst = src.clone();
-        double[] pixel = dst.get(0, 0);
-        if (pixel == null) return dst;
+        embedKeyInPlace(dst, r, s);
+        return dst;
+    }
 
-        // Découpage des bits : R (8 bits) + S (7 bits) = 15 bits
-        // B (5 bits) : S[0-4]
-        // G (5 bits) : R[0-2] + S[5-6]
-        // R (5 bits) : R[3-7]
+    /**
+     * Cache la clé dans le pixel (0,0) de l'image, sans copie de l'image.
+     *
+     * @param frame Image modifiée directement.
+     * @param r Clé R à cacher.
+     * @param s Clé S à cacher.
+     */
+    public static void embedKeyInPlace(Mat frame, int r, int s) {
+        embedKeyBits(frame, keyBits(r, s));
+    }
 
-        int bitsForRed = (r >> 3) & 0b11111;
-        int bitsForGreen = ((r & 0b111) << 2) | ((s >> 5) & 0b11);
-        int bitsForBlue = s & 0b11111;
+    private static void embedKeyBits(Mat frame, int[] bits) {
+        double[] pixel = frame.get(0, 0);
+        if (pixel == null) return;
 
-        pixel[0] = ((int)pixel[0] & 0xE0) | bitsForBlue;
-        pixel[1] = ((int)pixel[1] & 0xE0) | bitsForGreen;
-        pixel[2] = ((int)pixel[2] & 0xE0) | bitsForRed;
+        for (int c = 0; c < 3; c++) {
+            pixel[c] = ((int) pixel[c] & 0xE0) | bits[c];
+        }
 
-        dst.put(0, 0, pixel);
-        return dst;
+        frame.put(0, 0, pixel);
     }
 
     /**
-     * Extrait la clé cachée dans le pixel (0,0).
+     * Cache la clé dans les trois premiers octets d'une frame brute : canaux B, G, R du pixel (0,0)
+     * pour une frame couleur (même résultat que {@link #embedKeyInPlace(Mat, int, int)}),
+     * trois premiers pixels pour une frame en niveaux de gris.
      *
-     * @param src Image contenant potentiellement une clé.
+     * @param frame Pixels bruts (lignes sans remplissage), modifiés directement.
+     * @param r Clé R à cacher.
+     * @param s Clé S à cacher.
+     */
+    public static void embedKeyInPlace(ByteBuffer frame, int r, int s) {
+        writeKeyBits(frame, keyBits(r, s));
+    }
+
+    /**
+     * Écrit les bits de clé ({@link #keyBits}) dans les trois premiers octets d'un tampon.
+     */
+    static void writeKeyBits(ByteBuffer frame, int[] bits) {
+        for (int c = 0; c < 3; c++) {
+            frame.put(c, (byte) ((frame.get(c) & 0xE0) | bits[c]));
+        }
+    }
+
+    /**
+     * Extrait la clé cachée par {@link #embedKeyInPlace(ByteBuffer, int, int)}.
+     *
+     * @param frame Pixels bruts.
      * @return Un tableau {r, s} extrait.
      */
-    public static int[] extractKey(Mat src) {
-        double[] pixel = src.get(0, 0);
-        if (pixel == null) return new int[]{0, 0};
+    public static int[] extractKey(ByteBuffer frame) {
+        return keyFromBits(frame.get(0), frame.get(1), frame.get(2));
+    }
 
-        int valBlue  = (int)pixel[0] & 0xFF;
-        int valGreen = (int)pixel[1] & 0xFF;
-        int valRed   = (int)pixel[2] & 0xFF;
+    /**
+     * Découpe la clé en trois groupes de 5 bits, un par canal (ordre B, G, R d'OpenCV).
+     * R (8 bits) + S (7 bits) = 15 bits :
+     * B (5 bits) : S[0-4] / G (5 bits) : R[0-2] + S[5-6] / R (5 bits) : R[3-7]
+     *
+     * @param r Clé R.
+     * @param s Clé S.
+     * @return Les 5 bits de poids faible à écrire dans chaque canal {B, G, R}.
+     * @throws IllegalArgumentException si la clé sort de {@link KeySpace#DEFAULT} (elle serait tronquée).
+     */
+    static int[] keyBits(int r, int s) {
+        KeySpace.DEFAULT.check(r, s);
+        int bitsForRed = (r >> 3) & 0b11111;
+        int bitsForGreen = ((r & 0b111) << 2) | ((s >> 5) & 0b11);
+        int bitsForBlue = s & 0b11111;
+        return new int[]{bitsForBlue, bitsForGreen, bitsForRed};
+    }
 
+    /**
+     * Reconstitue la clé à partir des octets des trois canaux (inverse de {@link #keyBits}).
+     *
+     * @return Un tableau {r, s}.
+     */
+    static int[] keyFromBits(int valBlue, int valGreen, int valRed) {
         int bLsb = valBlue & 0b11111;
         int gLsb = valGreen & 0b11111;
         int rLsb = valRed & 0b11111;
@@ -245,4 +709,17 @@ public class VideoScrambler {
 
         return new int[]{r, s};
     }
+
+    /**
+     * Extrait la clé cachée dans le pixel (0,0).
+     *
+     * @param src Image contenant potentiellement une clé.
+     * @return Un tableau {r, s} extrait.
+     */
+    public static int[] extractKey(Mat src) {
+        double[] pixel = src.get(0, 0);
+        if (pixel == null) return new int[]{0, 0};
+
+        return keyFromBits((int) pixel[0] & 0xFF, (int) pixel[1] & 0xFF, (int) pixel[2] & 0xFF);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,474 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Point d'entrée en ligne de commande (sans interface graphique).
+ * Chiffre ou déchiffre un fichier vidéo aussi vite que le décodage et l'encodage le permettent.
+ * Entre deux fichiers .y4m (MONO ou 4:4:4), les lignes sont permutées directement d'un fichier
+ * projeté en mémoire à l'autre, sans codec ({@link Y4mProcessor}).
+ *
+ * Usage :
+ *   java VideoScramblerCli --input in.mp4|in.y4m --output out.avi|out.mkv|out.y4m --mode scramble|unscramble
+ *                          [--r 100] [--s 50] [--stego] [--timeline keys.txt] [--workers N]
+ *                          [--codec ffv1|hfyu|mjpg] [--segment-size MB] [--segment-seconds S] [--row-split MB]
+ *                          [--rotate N]
+ *   java VideoScramblerCli --input old.avi --output new.avi --mode rekey --r 100 --s 50 --new-r 7 --new-s 3
+ *                          [--stego] [--timeline keys.txt] [--workers N] [--codec ...] [--rotate N]
+ *   java VideoScramblerCli --input in.avi --mode analyze --timeline keys.txt
+ *                          [--sample 25] [--method structural|staged|exhaustive] [--metric pearson|sad|ssd|gradient]
+ *                          [--key-space 256x128] [--workers N]
+ */
+public class VideoScramblerCli {
+
+    // Chargement de la bibliothèque native OpenCV
+    static { System.loadLibrary(Core.NATIVE_LIBRARY_NAME); }
+
+    private String input;
+    private String output;
+    private boolean unscrambleMode = false;
+    private boolean analyzeMode = false;
+    // Changement de clé : (r, s) -> (newR, newS) en une seule permutation par frame
+    private boolean rekeyMode = false;
+    private int newR = -1;
+    private int newS = -1;
+    private int r = 100;
+    private int s = 50;
+    private boolean stego = false;
+    // Clé de sortie changée toutes les N frames (avec --stego), null si fixe
+    private KeyRotation keyRotation;
+    private String timelineFile;
+    private int sampleInterval = 25;
+    private VideoScrambler.CrackMethod crackMethod = VideoScrambler.CrackMethod.STRUCTURAL;
+    private VideoScrambler.ScoringMetric scoringMetric = VideoScrambler.ScoringMetric.PEARSON;
+    private KeySpace keySpace = KeySpace.DEFAULT;
+    private KeyTimeline timeline;
+    private RecordingSink.Codec codec = RecordingSink.Codec.FFV1;
+    private long segmentBytes = 0;
+    private double segmentSeconds = 0;
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+
+    // Réserve de Mat réutilisées d'une frame à l'autre
+    private final MatPool framePool = new MatPool();
+
+    /**
+     * Point d'entrée standard pour les applications Java.
+     *
+     * @param args Arguments de la ligne de commande.
+     */
+    public static void main(String[] args) {
+        VideoScramblerCli cli = new VideoScramblerCli();
+        try {
+            cli.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+        System.exit(cli.run() ? 0 : 1);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java VideoScramblerCli --input <file> --output <file> --mode scramble|unscramble");
+        System.err.println("                              [--r 0-255] [--s 0-127] [--stego] [--timeline <file>] [--workers N]");
+        System.err.println("                              [--codec ffv1|hfyu|mjpg] [--segment-size MB] [--segment-seconds S]");
+        System.err.println("                              [--row-split MB] [--rotate N]");
+        System.err.println("       java VideoScramblerCli --input <file> --output <file> --mode rekey --new-r 0-255 --new-s 0-127");
+        System.err.println("                              [--r 0-255] [--s 0-127] [--stego] [--timeline <file>] [--workers N]");
+        System.err.println("       java VideoScramblerCli --input <file> --mode analyze --timeline <file>");
+        System.err.println("                              [--sample N] [--method structural|staged|exhaustive]");
+        System.err.println("                              [--metric pearson|sad|ssd|gradient] [--key-space RxS] [--workers N]");
+    }
+
+    /**
+     * Lit les options de la ligne de commande.
+     *
+     * @param args Arguments de la ligne de commande.
+     */
+    void parseArguments(String[] args) {
+        boolean modeGiven = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--input":
+                    input = value(args, ++i, arg);
+                    break;
+                case "--output":
+                    output = value(args, ++i, arg);
+                    break;
+                case "--mode":
+                    String mode = value(args, ++i, arg);
+                    if (mode.equals("scramble")) {
+                        unscrambleMode = false;
+                    } else if (mode.equals("unscramble")) {
+                        unscrambleMode = true;
+                    } else if (mode.equals("rekey")) {
+                        rekeyMode = true;
+                    } else if (mode.equals("analyze")) {
+                        analyzeMode = true;
+                    } else {
+                        throw new IllegalArgumentException("Unknown mode: " + mode);
+                    }
+                    modeGiven = true;
+                    break;
+                case "--r":
+                    r = intValue(args, ++i, arg);
+                    break;
+                case "--s":
+                    s = intValue(args, ++i, arg);
+                    break;
+                case "--new-r":
+                    newR = intValue(args, ++i, arg);
+                    break;
+                case "--new-s":
+                    newS = intValue(args, ++i, arg);
+                    break;
+                case "--stego":
+                    stego = true;
+                    break;
+                case "--rotate":
+                    // Nouvelle clé toutes les N frames, 0 = clé fixe
+                    int period = intValue(args, ++i, arg);
+                    keyRotation = (period > 0) ? new KeyRotation(period) : null;
+                    break;
+                case "--timeline":
+                    timelineFile = value(args, ++i, arg);
+                    break;
+                case "--sample":
+                    sampleInterval = Math.max(1, intValue(args, ++i, arg));
+                    break;
+                case "--method":
+                    String method = value(args, ++i, arg);
+                    try {
+                        crackMethod = VideoScrambler.CrackMethod.valueOf(method.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown crack method: " + method);
+                    }
+                    break;
+                case "--metric":
+                    String metric = value(args, ++i, arg);
+                    try {
+                        scoringMetric = VideoScrambler.ScoringMetric.valueOf(metric.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown scoring metric: " + metric);
+                    }
+                    break;
+                case "--key-space":
+                    keySpace = KeySpace.parse(value(args, ++i, arg));
+                    break;
+                case "--codec":
+                    String codecName = value(args, ++i, arg);
+                    try {
+                        codec = RecordingSink.Codec.valueOf(codecName.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown codec: " + codecName);
+                    }
+                    break;
+                case "--segment-size":
+                    segmentBytes = Math.max(0, intValue(args, ++i, arg)) * 1024L * 1024L;
+                    break;
+                case "--segment-seconds":
+                    segmentSeconds = Math.max(0, intValue(args, ++i, arg));
+                    break;
+                case "--row-split":
+                    // Taille de frame (Mo) à partir de laquelle une frame est permutée sur plusieurs cœurs, 0 = jamais
+                    // (copie directe entre les deux images : aucune mémoire en plus, quel que soit le nombre de cœurs)
+                    int splitMegabytes = intValue(args, ++i, arg);
+                    ParallelRowPermuter.setThreshold(splitMegabytes > 0 ? splitMegabytes * 1024L * 1024L : Long.MAX_VALUE);
+                    break;
+                case "--workers":
+                    workers = Math.max(1, intValue(args, ++i, arg));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (analyzeMode) {
+            if (input == null || timelineFile == null) {
+                throw new IllegalArgumentException("--input and --timeline are required to analyze");
+            }
+        } else if (input == null || output == null || !modeGiven) {
+            throw new IllegalArgumentException("--input, --output and --mode are required");
+        } else if (rekeyMode && keyRotation == null && (newR < 0 || newS < 0)) {
+            throw new IllegalArgumentException("--new-r and --new-s are required to rekey");
+        } else if (keyRotation != null && (!stego || unscrambleMode)) {
+            throw new IllegalArgumentException("--rotate needs --stego and the scramble or rekey mode");
+        } else if (stego && !unscrambleMode && keyRotation == null) {
+            // La clé cachée n'a que 8 + 7 bits : une clé plus large serait tronquée et le fichier indéchiffrable
+            int outR = rekeyMode ? newR : r;
+            int outS = rekeyMode ? newS : s;
+            if (!KeySpace.DEFAULT.contains(outR, outS)) {
+                throw new IllegalArgumentException("--stego can only hide keys within " + KeySpace.DEFAULT
+                        + " (r 0-255, s 0-127): " + outR + ", " + outS);
+            }
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+        return args[index];
+    }
+
+    private static int intValue(String[] args, int index, String option) {
+        try {
+            return Integer.parseInt(value(args, index, option));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + args[index]);
+        }
+    }
+
+    /**
+     * Traite le fichier complet et affiche le débit obtenu.
+     *
+     * @return true si le traitement s'est déroulé correctement.
+     */
+    boolean run() {
+        if (analyzeMode) return analyze();
+        if ((unscrambleMode || rekeyMode) && timelineFile != null) {
+            try {
+                timeline = KeyTimeline.load(Paths.get(timelineFile));
+            } catch (IOException e) {
+                System.err.println("Could not read key timeline: " + e.getMessage());
+                return false;
+            }
+        }
+
+        // Entrée Y4M : lecture projetée en mémoire, sans décodeur
+        Y4mReader y4mInput = null;
+        VideoCapture capture = new VideoCapture();
+        double fps;
+        Size frameSize;
+        if (isY4m(input)) {
+            try {
+                y4mInput = new Y4mReader(Paths.get(input));
+            } catch (IOException e) {
+                System.err.println("Impossible to open the input file: " + e.getMessage());
+                return false;
+            }
+            fps = y4mInput.getFps();
+            frameSize = new Size(y4mInput.getWidth(), y4mInput.getHeight());
+        } else {
+            if (!capture.open(input)) {
+                System.err.println("Impossible to open the input file: " + input);
+                return false;
+            }
+            fps = capture.get(Videoio.CAP_PROP_FPS);
+            if (fps <= 0) fps = 30.0;
+            frameSize = new Size(
+                    (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                    (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT)
+            );
+        }
+
+        // Conteneur déduit de l'extension du fichier de sortie (AVI par défaut)
+        int extension = output.lastIndexOf('.');
+        String basePath = (extension > 0) ? output.substring(0, extension) : output;
+        RecordingSink.Container container = output.toLowerCase(Locale.ROOT).endsWith(".mkv") ? RecordingSink.Container.MKV
+                : isY4m(output) ? RecordingSink.Container.Y4M
+                : RecordingSink.Container.AVI;
+
+        // Y4M vers Y4M sans découpage : permutation directe des plans, sans conversion
+        if (y4mInput != null && container == RecordingSink.Container.Y4M
+                && y4mInput.getChroma().fullHeightPlanes() && segmentBytes == 0 && segmentSeconds == 0) {
+            return runY4m(y4mInput);
+        }
+
+        // Encodage sur un thread dédié ; FFV1 par défaut pour éviter la compression destructrice
+        RecordingSink recorder = new RecordingSink(basePath, codec, container, fps, frameSize,
+                2 * workers + 2, FramePipeline.BackpressurePolicy.BLOCK);
+        recorder.setRollover(segmentBytes, segmentSeconds);
+        recorder.setFrameRecycler(framePool::release);
+        recorder.setKeyCarrier(stego && !unscrambleMode);
+        if (!recorder.start()) {
+            System.err.println("Could not create video writer: " + output);
+            capture.release();
+            closeQuietly(y4mInput);
+            return false;
+        }
+
+        int rows = (int) frameSize.height;
+        int cols = (int) frameSize.width;
+
+        Y4mReader reader = y4mInput;
+        boolean restoreKey = stego && (unscrambleMode || rekeyMode);
+        CountDownLatch endOfStream = new CountDownLatch(1);
+        FramePipeline pipeline = new FramePipeline(
+                () -> {
+                    Mat frame = framePool.acquire(rows, cols, CvType.CV_8UC3);
+                    boolean read;
+                    try {
+                        read = (reader != null) ? reader.read(frame, restoreKey) : capture.read(frame);
+                    } catch (IOException e) {
+                        // Fichier tronqué : fin du flux
+                        System.err.println("Y4M read failed: " + e.getMessage());
+                        read = false;
+                    }
+                    if (!read || frame.empty()) {
+                        framePool.release(frame);
+                        return null;
+                    }
+                    return frame;
+                },
+                this::processFrame,
+                (original, processed) -> {
+                    recorder.submit(processed);
+                    // En dernier : si le dépôt échoue, l'étage d'écriture rend lui-même les deux frames
+                    framePool.release(original);
+                },
+                workers, 2 * workers + 2, FramePipeline.BackpressurePolicy.BLOCK,
+                endOfStream::countDown);
+        pipeline.setFrameRecycler(framePool::release);
+
+        long start = System.nanoTime();
+        pipeline.start();
+        try {
+            endOfStream.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pipeline.stop();
+        recorder.close();
+        long elapsed = System.nanoTime() - start;
+
+        capture.release();
+        closeQuietly(y4mInput);
+        System.out.println("Frame pool: " + framePool);
+        framePool.clear();
+
+        long frames = pipeline.getProcessedFrames();
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("Processed %d frames in %.2fs (%.1f frames/sec)",
+                frames, seconds, seconds > 0 ? frames / seconds : 0.0));
+        return true;
+    }
+
+    /**
+     * Traitement direct d'un fichier Y4M vers un fichier Y4M de même format ({@link Y4mProcessor}).
+     *
+     * @param reader Fichier d'entrée ouvert (fermé par cette méthode).
+     * @return true si le traitement s'est déroulé correctement.
+     */
+    private boolean runY4m(Y4mReader reader) {
+        long start = System.nanoTime();
+        long frames;
+        try (reader; Y4mWriter writer = new Y4mWriter(Paths.get(output), reader.getWidth(), reader.getHeight(),
+                reader.getChroma(), reader.getFps(), reader.getColorRange())) {
+            System.out.println("Direct Y4M processing to " + output);
+            Y4mProcessor processor = new Y4mProcessor(reader, writer, workers);
+            processor.setKeyRotation(keyRotation);
+            frames = rekeyMode
+                    ? processor.rekey(r, s, newR, newS, stego, timeline)
+                    : processor.process(r, s, unscrambleMode, stego, timeline);
+        } catch (IOException e) {
+            System.err.println("Y4M processing failed: " + e.getMessage());
+            return false;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Processed %d frames in %.2fs (%.1f frames/sec)",
+                frames, seconds, seconds > 0 ? frames / seconds : 0.0));
+        return true;
+    }
+
+    private static boolean isY4m(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".y4m");
+    }
+
+    private static void closeQuietly(Y4mReader reader) {
+        if (reader == null) return;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // Lecture seule : rien à perdre
+        }
+    }
+
+    /**
+     * Analyse toute la vidéo et enregistre la chronologie des clés ({@link KeyTimelineJob}).
+     * Les résultats par frame sont conservés dans {@code <timeline>.cache} pour reprendre un travail interrompu.
+     *
+     * @return true si l'analyse s'est déroulée correctement.
+     */
+    private boolean analyze() {
+        Path timelinePath = Paths.get(timelineFile);
+        Path cachePath = Paths.get(timelineFile + ".cache");
+        long start = System.nanoTime();
+        try {
+            KeyTimeline result = new KeyTimelineJob(input, cachePath, sampleInterval, crackMethod, scoringMetric,
+                    keySpace, workers).run();
+            result.save(timelinePath);
+            for (KeyTimeline.Segment segment : result.getSegments()) {
+                System.out.println(segment);
+            }
+        } catch (IOException e) {
+            System.err.println("Key timeline analysis failed: " + e.getMessage());
+            return false;
+        }
+        System.out.println(String.format("Key timeline written to %s in %.2fs",
+                timelinePath, (System.nanoTime() - start) / 1e9));
+        return true;
+    }
+
+    /**
+     * Applique le chiffrement ou le déchiffrement sur une frame (appelé depuis le pool de la chaîne).
+     * La frame renvoyée est empruntée à la réserve et rendue après écriture (ou ici, en cas d'erreur).
+     */
+    private Mat processFrame(Mat input, long frameIndex) {
+        Mat output = framePool.acquire(input.rows(), input.cols(), input.type());
+        try {
+            fillFrame(input, output, frameIndex);
+            return output;
+        } catch (RuntimeException e) {
+            // La chaîne ne recycle que l'entrée : la sortie empruntée est rendue ici
+            framePool.release(output);
+            throw e;
+        }
+    }
+
+    private void fillFrame(Mat input, Mat output, long frameIndex) {
+        // Clé de sortie : fixe ou donnée par la rotation
+        int[] outputKey = (keyRotation != null) ? keyRotation.keyFor(frameIndex)
+                : rekeyMode ? new int[]{newR, newS} : new int[]{r, s};
+        if (rekeyMode) {
+            int[] key = sourceKey(input, frameIndex);
+            VideoScrambler.rekeyImage(input, output, key[0], key[1], outputKey[0], outputKey[1], stego);
+            return;
+        }
+        if (!unscrambleMode) {
+            // Clé cachée écrite pendant la permutation
+            VideoScrambler.processImage(input, output, outputKey[0], outputKey[1], false, stego);
+            return;
+        }
+
+        int[] key = sourceKey(input, frameIndex);
+        VideoScrambler.processImage(input, output, key[0], key[1], true);
+    }
+
+    /**
+     * Clé avec laquelle une frame d'entrée a été chiffrée : clé cachée, chronologie ou clé donnée.
+     */
+    private int[] sourceKey(Mat input, long frameIndex) {
+        if (stego) {
+            return VideoScrambler.extractKey(input);
+        }
+        if (timeline != null) {
+            int[] key = timeline.keyFor(frameIndex, input);
+            if (key != null) return key;
+        }
+        return new int[]{r, s};
+    }
+}
@@ -7,9 +7,19 @@
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
@@ -21,10 +31,10 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.stage.FileChooser;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.VideoWriter;
 import org.opencv.videoio.Videoio;
 
 /**
@@ -36,25 +46,91 @@ public class VideoScramblerController {
     @FXML private Button btnCamera;
     @FXML private Button btnFile;
     @FXML private Button btnCrack;
+    @FXML private Button btnCancelCrack;
+    @FXML private ProgressBar progressCrack;
+    @FXML private Label lblCrackStatus;
     @FXML private ImageView originalFrame;
     @FXML private ImageView processedFrame;
     @FXML private TextField txtR;
     @FXML private TextField txtS;
+    @FXML private TextField txtRotate;
     @FXML private ToggleButton btnScramble;
     @FXML private ToggleButton btnUnscramble;
     @FXML private CheckBox chkStego;
-
-    private ScheduledExecutorService timer;
+    @FXML private CheckBox chkTrack;
+    @FXML private CheckBox chkMultiFrame;
+    @FXML private CheckBox chkMetrics;
+    @FXML private ChoiceBox<RecordingSink.Codec> choiceCodec;
+    @FXML private ChoiceBox<RecordingSink.Container> choiceContainer;
+    @FXML private ChoiceBox<VideoScrambler.CrackMethod> choiceCrackMethod;
+    @FXML private ChoiceBox<VideoScrambler.ScoringMetric> choiceScoringMetric;
+
+    // Threads de transformation : on laisse un cœur à la lecture et un à l'écriture/affichage
+    private static final int PIPELINE_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    private static final int PIPELINE_CAPACITY = 2 * PIPELINE_WORKERS + 2;
+    // Cœurs réservés au cassage de clé (le reste va au traitement des frames)
+    private static final int CRACK_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    // Cassage sur plusieurs frames : nombre de frames cumulées, prises toutes les MULTI_FRAME_STRIDE frames
+    private static final int MULTI_FRAME_COUNT = 8;
+    private static final int MULTI_FRAME_STRIDE = 5;
+    // Frames en attente d'encodage ; découpage des enregistrements caméra (pas de fichier sans fin)
+    private static final int RECORDING_CAPACITY = 32;
+    private static final long CAMERA_SEGMENT_BYTES = 2L * 1024 * 1024 * 1024;
+    private static final double CAMERA_SEGMENT_SECONDS = 10 * 60;
+    // Mesures : une ligne CSV toutes les METRICS_CSV_SECONDS, incrustation rafraîchie toutes les METRICS_OVERLAY_MILLIS
+    private static final int METRICS_CSV_SECONDS = 5;
+    private static final int METRICS_OVERLAY_MILLIS = 500;
+
+    private FramePipeline pipeline;
     private VideoCapture capture = new VideoCapture();
+    // Fichier Y4M ouvert à la place de la capture (lecture projetée en mémoire), null sinon
+    private volatile Y4mReader y4mInput;
     private boolean cameraActive = false;
-    private VideoWriter writer;
-    private boolean isRecording = false;
+    // Enregistrement asynchrone (thread d'encodage dédié), null si le fichier n'a pas pu être créé
+    private volatile RecordingSink recorder;
 
     // Variable tampon pour stocker la dernière image vue (thread-safe pour le crack)
     private Mat lastFrame = new Mat();
 
+    // Réserve de Mat réutilisées par la capture, le traitement et l'enregistrement
+    private final MatPool framePool = new MatPool();
+    // Dernière taille lue, pour emprunter directement une Mat du bon format
+    private volatile int frameRows = 0;
+    private volatile int frameCols = 0;
+
     private ToggleGroup modeGroup;
 
+    // Affichage sans allocation par frame (une image réutilisée par vue)
+    private FrameDisplay originalDisplay;
+    private FrameDisplay processedDisplay;
+
+    // Recherches de clé (bouton et suivi automatique) sur un pool dédié
+    private final CrackService crackService = new CrackService(CRACK_THREADS);
+    private CrackJob crackJob;
+    // Une mise à jour de la progression est déjà en attente sur le thread JavaFX
+    private final AtomicBoolean crackProgressPending = new AtomicBoolean(false);
+    // Frames en cours de collecte pour un cassage sur plusieurs frames (remplie par l'étage d'écriture)
+    private volatile List<Mat> multiFrameBatch;
+    private long multiFrameCounter = 0;
+
+    // Vérification continue de la clé en mode déchiffrement (nouvelle recherche si elle change)
+    private KeyTracker keyTracker;
+
+    // Rotation de la clé au chiffrement avec stéganographie (graine propre à la session)
+    private final long rotationSeed = new SecureRandom().nextLong();
+    private volatile KeyRotation keyRotation;
+    // Dernière clé cachée lue au déchiffrement (r << 16 | s) : l'IHM n'est mise à jour que si elle change
+    private final AtomicInteger extractedKey = new AtomicInteger(-1);
+    // Dernier refus de clé signalé (un message par saisie refusée, pas par frame)
+    private final AtomicReference<String> lastKeyWarning = new AtomicReference<>();
+    private final AtomicBoolean keyUpdatePending = new AtomicBoolean(false);
+
+    // Latences par étage, débits, files et recherches de clé (publiées par JMX)
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    // Export CSV et incrustation des mesures pendant l'acquisition
+    private ScheduledExecutorService metricsTimer;
+    private Path metricsFile;
+
     /**
      * Initialisation du contrôleur et des groupes de boutons.
      */
@@ -62,6 +138,43 @@ public class VideoScramblerController {
         modeGroup = new ToggleGroup();
         btnScramble.setToggleGroup(modeGroup);
         btnUnscramble.setToggleGroup(modeGroup);
+
+        choiceCrackMethod.getItems().setAll(VideoScrambler.CrackMethod.values());
+        choiceCrackMethod.setValue(VideoScrambler.CrackMethod.STRUCTURAL);
+        choiceScoringMetric.getItems().setAll(VideoScrambler.ScoringMetric.values());
+        choiceScoringMetric.setValue(VideoScrambler.ScoringMetric.PEARSON);
+        choiceCodec.getItems().setAll(RecordingSink.Codec.values());
+        choiceCodec.setValue(RecordingSink.Codec.FFV1);
+        choiceContainer.getItems().setAll(RecordingSink.Container.values());
+        choiceContainer.setValue(RecordingSink.Container.AVI);
+
+        originalDisplay = new FrameDisplay(originalFrame);
+        processedDisplay = new FrameDisplay(processedFrame);
+        originalDisplay.setConversionLatency(metrics.stage(PipelineMetrics.Stage.DISPLAY));
+        processedDisplay.setConversionLatency(metrics.stage(PipelineMetrics.Stage.DISPLAY));
+        metrics.registerMBean();
+        crackService.setMetrics(metrics);
+        chkMetrics.selectedProperty().addListener((observable, wasSelected, selected) -> {
+            if (!selected) processedDisplay.setOverlay(null);
+        });
+
+        btnCancelCrack.setDisable(true);
+
+        keyTracker = new KeyTracker(crackService, (r, s) -> Platform.runLater(() -> {
+            txtR.setText(String.valueOf(r));
+            txtS.setText(String.valueOf(s));
+            System.out.println("Key change detected, new key: R=" + r + ", S=" + s);
+        }));
+        // À l'activation du suivi, on part de la clé saisie
+        chkTrack.selectedProperty().addListener((observable, wasSelected, selected) -> {
+            if (selected) {
+                try {
+                    keyTracker.setKey(Integer.parseInt(txtR.getText()), Integer.parseInt(txtS.getText()));
+                } catch (NumberFormatException e) {
+                    // Clé saisie invalide : le suivi démarrera au prochain cassage
+                }
+            }
+        });
     }
 
     /**
@@ -71,7 +184,7 @@ public class VideoScramblerController {
     protected void startCamera(ActionEvent event) {
         if (!this.cameraActive) {
             this.capture.open(0);
-            startAcquisition("output_cam_processed.avi");
+            startAcquisition("output_cam_processed", true);
             this.btnCamera.setText("Stop Camera");
         } else {
             this.cameraActive = false;
@@ -93,162 +206,412 @@ public class VideoScramblerController {
 
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Open Video File");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Video files", "*.mp4", "*.avi", "*.mkv", "*.mov", "*.y4m"),
+                new FileChooser.ExtensionFilter("Raw YUV4MPEG2 (*.y4m)", "*.y4m"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
         File file = fileChooser.showOpenDialog(btnFile.getScene().getWindow());
 
         if (file != null) {
-            this.capture.open(file.getAbsolutePath());
-            startAcquisition(file.getName().replace(".", "_processed."));
+            if (file.getName().toLowerCase(Locale.ROOT).endsWith(".y4m")) {
+                try {
+                    this.y4mInput = new Y4mReader(file.toPath());
+                } catch (IOException e) {
+                    System.err.println("Impossible to open the Y4M file: " + e.getMessage());
+                    return;
+                }
+            } else {
+                this.capture.open(file.getAbsolutePath());
+            }
+            String name = file.getName();
+            int extension = name.lastIndexOf('.');
+            startAcquisition((extension > 0 ? name.substring(0, extension) : name) + "_processed", false);
         }
     }
 
     /**
-     * Démarre le thread d'acquisition et l'enregistrement vidéo.
+     * Démarre la chaîne d'acquisition, de traitement et d'enregistrement vidéo.
+     *
+     * @param outputBasename Nom du fichier vidéo enregistré, sans extension (donnée par le conteneur choisi).
+     * @param liveSource true pour une caméra (frames ignorées si la chaîne est pleine),
+     *                   false pour un fichier (aucune frame perdue, traitement au plus vite).
      */
-    private void startAcquisition(String outputFilename) {
-        if (this.capture.isOpened()) {
+    private void startAcquisition(String outputBasename, boolean liveSource) {
+        if (this.capture.isOpened() || this.y4mInput != null) {
             this.cameraActive = true;
 
-            // Utilisation de FFV1 pour éviter la compression destructrice
-            int fourcc = VideoWriter.fourcc('F', 'F', 'V', '1');
+            double fps;
+            Size frameSize;
+            if (y4mInput != null) {
+                fps = y4mInput.getFps();
+                frameSize = new Size(y4mInput.getWidth(), y4mInput.getHeight());
+            } else {
+                fps = capture.get(Videoio.CAP_PROP_FPS);
+                if (fps <= 0) fps = 30.0;
+                frameSize = new Size(
+                        (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                        (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT)
+                );
+            }
+            this.frameRows = (int) frameSize.height;
+            this.frameCols = (int) frameSize.width;
+            this.extractedKey.set(-1);
+
+            FramePipeline.BackpressurePolicy policy = liveSource
+                    ? FramePipeline.BackpressurePolicy.DROP
+                    : FramePipeline.BackpressurePolicy.BLOCK;
+
+            // FFV1 par défaut pour éviter la compression destructrice
+            this.recorder = new RecordingSink(outputBasename, choiceCodec.getValue(), choiceContainer.getValue(),
+                    fps, frameSize, RECORDING_CAPACITY, policy);
+            if (liveSource) recorder.setRollover(CAMERA_SEGMENT_BYTES, CAMERA_SEGMENT_SECONDS);
+            recorder.setFrameRecycler(framePool::release);
+            recorder.setWriteLatency(metrics.stage(PipelineMetrics.Stage.WRITE));
+            if (!recorder.start()) {
+                System.err.println("Warning: Could not create video writer.");
+                this.recorder = null;
+            }
 
-            if (!outputFilename.endsWith(".avi") && !outputFilename.endsWith(".mkv")) {
-                outputFilename += ".avi";
+            this.pipeline = new FramePipeline(this::grabFrame, this::processFrame, this::showAndRecord,
+                    PIPELINE_WORKERS, PIPELINE_CAPACITY, policy, () -> {
+                        System.out.println("End of stream");
+                        Platform.runLater(this::stopAcquisition);
+                    });
+            this.pipeline.setFrameRecycler(framePool::release);
+            metrics.reset();
+            metrics.attach(pipeline, recorder, originalDisplay, processedDisplay);
+            startMetricsTimer(Paths.get(outputBasename + "_metrics.csv"));
+            this.pipeline.start();
+        } else {
+            System.err.println("Impossible to open the camera connection...");
+        }
+    }
+
+    /**
+     * Ajoute une ligne de mesures au fichier CSV de l'acquisition à intervalle régulier
+     * et rafraîchit l'incrustation si elle est demandée.
+     */
+    private void startMetricsTimer(Path csvFile) {
+        this.metricsFile = csvFile;
+        this.metricsTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricsTimer.scheduleAtFixedRate(() -> {
+            try {
+                metrics.appendCsv(csvFile);
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + csvFile + ": " + e.getMessage());
             }
+        }, METRICS_CSV_SECONDS, METRICS_CSV_SECONDS, TimeUnit.SECONDS);
+        metricsTimer.scheduleAtFixedRate(() -> {
+            if (chkMetrics.isSelected()) processedDisplay.setOverlay(metrics.overlayLines());
+        }, 0, METRICS_OVERLAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
 
-            double fps = capture.get(Videoio.CAP_PROP_FPS);
-            if (fps <= 0) fps = 30.0;
-            Size frameSize = new Size(
-                    (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH),
-                    (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT)
-            );
-
-            this.writer = new VideoWriter(outputFilename, fourcc, fps, frameSize, true);
-            this.isRecording = writer.isOpened();
-            if (!isRecording) System.err.println("Warning: Could not create video writer.");
-
-            Runnable frameGrabber = () -> {
-                Mat frame = grabFrame();
-                if (!frame.empty()) {
-                    // On garde une copie de la frame actuelle pour que la fonction "Crack"
-                    // puisse l'utiliser sans toucher au flux vidéo (éviter le conflit de thread).
-                    frame.copyTo(lastFrame);
-
-                    // 1. Affichage Source
-                    Image imgOrig = mat2Image(frame);
-                    updateImageView(originalFrame, imgOrig);
-
-                    // 2. Traitement (Chiffrement/Déchiffrement)
-                    Mat processed = processFrame(frame);
-
-                    // 3. Enregistrement
-                    if (isRecording && processed != null) {
-                        writer.write(processed);
-                    }
-
-                    // 4. Affichage Sortie
-                    Image imgProc = mat2Image(processed);
-                    updateImageView(processedFrame, imgProc);
-                } else {
-                    System.out.println("End of stream");
-                    Platform.runLater(this::stopAcquisition);
-                }
-            };
+    /**
+     * Étage d'écriture/affichage de la chaîne : appelé dans l'ordre des frames, depuis un seul thread.
+     */
+    private void showAndRecord(Mat frame, Mat processed) {
+        // On garde une copie de la frame actuelle pour que la fonction "Crack"
+        // puisse l'utiliser sans toucher au flux vidéo (éviter le conflit de thread).
+        frame.copyTo(lastFrame);
+
+        // Collecte des frames d'un cassage sur plusieurs frames
+        List<Mat> batch = multiFrameBatch;
+        if (batch != null && multiFrameCounter++ % MULTI_FRAME_STRIDE == 0) {
+            batch.add(frame.clone());
+            if (batch.size() == MULTI_FRAME_COUNT) {
+                multiFrameBatch = null;
+                Platform.runLater(() -> startCrack(crackService.submit(batch, this::onCrackProgress)));
+            }
+        }
+
+        // Vérification de la clé suivie : ici les frames arrivent dans l'ordre, sur un seul thread
+        if (btnUnscramble.isSelected() && !chkStego.isSelected() && chkTrack.isSelected()) {
+            keyTracker.onFrame(frame);
+        }
+
+        // 1. Affichage Source (ignoré si l'IHM est en retard, sans bloquer)
+        originalDisplay.show(frame);
 
-            this.timer = Executors.newSingleThreadScheduledExecutor();
-            this.timer.scheduleAtFixedRate(frameGrabber, 0, 15, TimeUnit.MILLISECONDS);
+        // 2. Affichage Sortie
+        processedDisplay.show(processed);
+        metrics.frameOut();
+
+        // 3. Enregistrement : la frame est confiée au thread d'encodage (rendue à la réserve après écriture)
+        RecordingSink recorder = this.recorder;
+        if (recorder != null && processed != null) {
+            // Sortie Y4M : la clé cachée est recopiée telle quelle dans les plans
+            recorder.setKeyCarrier(chkStego.isSelected() && btnScramble.isSelected());
+            recorder.submit(processed);
         } else {
-            System.err.println("Impossible to open the camera connection...");
+            framePool.release(processed);
         }
+
+        // 4. La source a été copiée : retour à la réserve, en dernier (si une étape précédente lève
+        // une exception, l'étage la rend lui-même)
+        framePool.release(frame);
     }
 
     /**
      * Applique la logique de traitement sur une frame.
+     * La frame renvoyée est empruntée à la réserve et rendue par l'étage d'écriture (ou ici, en cas d'erreur).
+     *
+     * @param frameIndex Numéro de la frame (clé de la rotation).
+     */
+    private Mat processFrame(Mat input, long frameIndex) {
+        Mat output = framePool.acquire(input.rows(), input.cols(), input.type());
+        try {
+            fillFrame(input, output, frameIndex);
+            return output;
+        } catch (RuntimeException e) {
+            // La chaîne ne recycle que l'entrée : la sortie empruntée est rendue ici
+            framePool.release(output);
+            throw e;
+        }
+    }
+
+    /**
+     * Remplit la frame de sortie selon le mode choisi (copie de l'entrée si la clé est invalide).
      */
-    private Mat processFrame(Mat input) {
+    private void fillFrame(Mat input, Mat output, long frameIndex) {
         try {
             int r = Integer.parseInt(txtR.getText());
             int s = Integer.parseInt(txtS.getText());
 
             if (btnScramble.isSelected()) {
-                // Mode Chiffrement
-                Mat processed = VideoScrambler.processImage(input, r, s, false);
-                if (chkStego.isSelected()) {
-                    processed = VideoScrambler.embedKey(processed, r, s);
+                // Mode Chiffrement (avec stéganographie, la clé peut changer toutes les N frames)
+                boolean stego = chkStego.isSelected();
+                KeyRotation rotation = stego ? currentRotation() : null;
+                if (rotation != null) {
+                    int[] key = rotation.keyFor(frameIndex);
+                    r = key[0];
+                    s = key[1];
                 }
-                return processed;
+                // La clé cachée est écrite pendant la permutation, sans seconde copie de la frame
+                long start = System.nanoTime();
+                VideoScrambler.processImage(input, output, r, s, false, stego);
+                metrics.record(PipelineMetrics.Stage.PROCESS, System.nanoTime() - start);
+                return;
 
             } else if (btnUnscramble.isSelected()) {
                 // Mode Déchiffrement
                 if (chkStego.isSelected()) {
+                    long start = System.nanoTime();
                     int[] key = VideoScrambler.extractKey(input);
+                    metrics.record(PipelineMetrics.Stage.STEGO, System.nanoTime() - start);
+                    r = key[0];
+                    s = key[1];
+                    showExtractedKey(r, s);
+                } else if (chkTrack.isSelected() && keyTracker.hasKey()) {
+                    // Clé suivie (vérifiée dans l'ordre des frames par l'étage d'écriture)
+                    int[] key = keyTracker.getKey();
                     r = key[0];
                     s = key[1];
-                    int finalR = r;
-                    int finalS = s;
-                    Platform.runLater(() -> {
-                        txtR.setText(String.valueOf(finalR));
-                        txtS.setText(String.valueOf(finalS));
-                    });
                 }
-                return VideoScrambler.processImage(input, r, s, true);
+                long start = System.nanoTime();
+                VideoScrambler.processImage(input, output, r, s, true);
+                metrics.record(PipelineMetrics.Stage.PROCESS, System.nanoTime() - start);
+                return;
             }
+        } catch (IllegalArgumentException e) {
+            // Clé illisible, ou trop large pour être cachée (stéganographie : r < 256, s < 128).
+            // Le refus a lieu avant toute écriture : la frame de sortie reçoit la copie ci-dessous.
+            warnInvalidKey(e);
+        }
+        input.copyTo(output);
+    }
+
+    /**
+     * Signale une seule fois une clé refusée (stéganographie) tant que la saisie ne change pas,
+     * au lieu d'un message par frame. Les erreurs de saisie (nombre illisible) restent silencieuses.
+     */
+    private void warnInvalidKey(IllegalArgumentException e) {
+        if (e instanceof NumberFormatException) return;
+        String message = e.getMessage();
+        if (message != null && !message.equals(lastKeyWarning.getAndSet(message))) {
+            System.err.println("Key rejected: " + message);
+        }
+    }
+
+    /**
+     * Rotation demandée dans l'IHM (nombre de frames par clé), ou null si la clé est fixe.
+     * Une seule rotation est conservée et remplacée quand la période change.
+     */
+    private KeyRotation currentRotation() {
+        int period;
+        try {
+            period = Integer.parseInt(txtRotate.getText().trim());
         } catch (NumberFormatException e) {
-            // Ignorer erreurs parsing
+            return null;
         }
-        return input.clone();
+        if (period <= 0) return null;
+        KeyRotation rotation = this.keyRotation;
+        if (rotation == null || rotation.getPeriod() != period) {
+            rotation = new KeyRotation(rotationSeed, period);
+            this.keyRotation = rotation;
+        }
+        return rotation;
+    }
+
+    /**
+     * Affiche la clé cachée lue au déchiffrement, seulement si elle a changé.
+     * Les changements sont regroupés : une seule mise à jour à la fois en attente sur le thread JavaFX.
+     */
+    private void showExtractedKey(int r, int s) {
+        int key = (r << 16) | s;
+        if (extractedKey.getAndSet(key) == key) return;
+        if (!keyUpdatePending.compareAndSet(false, true)) return;
+        Platform.runLater(() -> {
+            keyUpdatePending.set(false);
+            int latest = extractedKey.get();
+            txtR.setText(String.valueOf(latest >>> 16));
+            txtS.setText(String.valueOf(latest & 0xFFFF));
+        });
     }
 
     /**
-     * Lance la recherche de clé par force brute sur la frame courante.
+     * Lance la recherche de clé sur la frame courante (ou rejoint la recherche déjà en cours).
      */
     @FXML
     protected void crackKey(ActionEvent event) {
         // Vérification que nous avons une image valide en mémoire
-        if (!lastFrame.empty()) {
-
-            // On clone l'image pour que le thread de calcul travaille sur sa propre copie
-            // et ne soit pas perturbé par le timer qui met à jour lastFrame.
-            Mat frameToCrack = lastFrame.clone();
-
-            System.out.println("Starting Brute Force on current frame...");
-
-            new Thread(() -> {
-                long start = System.currentTimeMillis();
+        if (lastFrame.empty()) {
+            System.out.println("Aucune image à analyser (lancez la caméra ou une vidéo d'abord).");
+            return;
+        }
 
-                // Appel de la méthode optimisée dans VideoScrambler
-                int[] key = VideoScrambler.crackKey(frameToCrack);
+        // Frames peu détaillées : les corrélations des prochaines frames sont cumulées
+        if (chkMultiFrame.isSelected() && pipeline != null) {
+            if (multiFrameBatch == null && crackJob == null) {
+                multiFrameCounter = 0;
+                multiFrameBatch = new ArrayList<>();
+                lblCrackStatus.setText("Collecting " + MULTI_FRAME_COUNT + " frames...");
+            }
+            return;
+        }
 
-                long end = System.currentTimeMillis();
+        VideoScrambler.CrackMethod method = choiceCrackMethod.getValue();
+        VideoScrambler.ScoringMetric metric = choiceScoringMetric.getValue();
+        // Le service travaille sur sa propre copie de la frame, à l'abri de la chaîne de traitement
+        startCrack(crackService.submit(lastFrame, method, metric, this::onCrackProgress));
+    }
 
-                Platform.runLater(() -> {
-                    txtR.setText(String.valueOf(key[0]));
-                    txtS.setText(String.valueOf(key[1]));
+    /**
+     * Suit une recherche soumise au service : progression, annulation et affichage du résultat.
+     */
+    private void startCrack(CrackJob job) {
+        if (job == crackJob) {
+            System.out.println("Key search already running, request merged with it.");
+            return;
+        }
+        crackJob = job;
+        System.out.println("Starting key search (" + job.getMethod() + ", " + job.getMetric() + ") on " + job.getFrameCount() + " frame(s)...");
+
+        long start = System.currentTimeMillis();
+        btnCancelCrack.setDisable(false);
+        progressCrack.setProgress(0);
+        lblCrackStatus.setText("Searching...");
+
+        job.result().whenComplete((key, error) -> Platform.runLater(() -> {
+            long end = System.currentTimeMillis();
+            if (crackJob == job) {
+                crackJob = null;
+                btnCancelCrack.setDisable(true);
+            }
 
-                    btnUnscramble.setSelected(true);
+            if (error != null) {
+                lblCrackStatus.setText(job.isCancelled() ? "Cancelled" : "Error: " + error.getMessage());
+                System.out.println("Crack stopped after " + (end - start) + "ms");
+                return;
+            }
 
-                    System.out.println("Crack finished in " + (end - start) + "ms");
+            txtR.setText(String.valueOf(key[0]));
+            txtS.setText(String.valueOf(key[1]));
+            keyTracker.setKey(key[0], key[1]);
+            btnUnscramble.setSelected(true);
+            progressCrack.setProgress(1);
+            lblCrackStatus.setText("R=" + key[0] + ", S=" + key[1]);
+
+            System.out.println("Crack finished in " + (end - start) + "ms ("
+                    + String.format(Locale.ROOT, "%.0f", job.getKeysPerSecond()) + " keys/s)");
+
+            // Sur plusieurs frames, on affiche aussi l'écart avec la meilleure clé d'un autre pas S
+            String margin = Double.isNaN(job.getMargin()) ? ""
+                    : "\nMarge sur le meilleur autre S : " + String.format("%.2f", job.getMargin())
+                    + " (" + job.getFrameCount() + " frames)";
+            new Alert(Alert.AlertType.INFORMATION,
+                    "Clé trouvée : R=" + key[0] + ", S=" + key[1] + "\nTemps: " + (end-start) + "ms" + margin).show();
+        }));
+    }
 
-                    new Alert(Alert.AlertType.INFORMATION,
-                            "Clé trouvée : R=" + key[0] + ", S=" + key[1] + "\nTemps: " + (end-start) + "ms").show();
-                });
-            }).start();
-        } else {
-            System.out.println("Aucune image à analyser (lancez la caméra ou une vidéo d'abord).");
+    /**
+     * Annule la recherche de clé en cours (lancée sur une mauvaise frame, par exemple).
+     */
+    @FXML
+    protected void cancelCrack(ActionEvent event) {
+        if (crackJob != null) {
+            crackJob.cancel();
         }
     }
 
     /**
-     * Capture une frame depuis le flux vidéo ouvert.
+     * Affiche la progression et la meilleure clé provisoire (appelée depuis les threads de recherche).
+     * Les mises à jour sont regroupées : une seule à la fois en attente sur le thread JavaFX.
+     */
+    private void onCrackProgress(CrackJob job) {
+        if (!crackProgressPending.compareAndSet(false, true)) return;
+        Platform.runLater(() -> {
+            crackProgressPending.set(false);
+            if (job != crackJob) return;
+
+            progressCrack.setProgress(job.getProgress());
+            int[] best = job.getBestKey();
+            if (best != null) {
+                lblCrackStatus.setText(String.format("Best so far: R=%d, S=%d (%.3f)",
+                        best[0], best[1], job.getBestScore()));
+            }
+        });
+    }
+
+    /**
+     * Capture une frame depuis le flux vidéo ouvert, dans une Mat empruntée à la réserve.
+     *
+     * @return La frame lue, ou null en fin de flux.
      */
     private Mat grabFrame() {
-        Mat frame = new Mat();
-        if (this.capture.isOpened()) {
+        Mat frame = framePool.acquire(frameRows, frameCols, CvType.CV_8UC3);
+        long start = System.nanoTime();
+        Y4mReader reader = this.y4mInput;
+        if (reader != null) {
+            boolean read = false;
+            try {
+                // En déchiffrement avec stéganographie, la clé des plans est replacée dans le pixel (0,0)
+                read = reader.read(frame, chkStego.isSelected() && btnUnscramble.isSelected());
+            } catch (IOException e) {
+                System.err.println("Exception during the image elaboration: " + e);
+            }
+            if (!read) {
+                framePool.release(frame);
+                return null;
+            }
+        } else if (this.capture.isOpened()) {
             try {
                 this.capture.read(frame);
             } catch (Exception e) {
                 System.err.println("Exception during the image elaboration: " + e);
             }
         }
+        if (frame.empty()) {
+            framePool.release(frame);
+            return null;
+        }
+        frameRows = frame.rows();
+        frameCols = frame.cols();
+        metrics.record(PipelineMetrics.Stage.CAPTURE, System.nanoTime() - start);
+        metrics.frameIn();
         return frame;
     }
 
@@ -256,29 +619,65 @@ public class VideoScramblerController {
      * Arrête l'acquisition vidéo et libère les ressources.
      */
     private void stopAcquisition() {
-        if (this.timer != null && !this.timer.isShutdown()) {
-            try {
-                this.timer.shutdown();
-                this.timer.awaitTermination(33, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                System.err.println("Exception in stopping the frame capture: " + e);
-            }
+        if (this.pipeline != null) {
+            this.pipeline.stop();
+        }
+        stopMetricsTimer();
+        this.pipeline = null;
+        // Collecte multi-frames inachevée
+        List<Mat> batch = multiFrameBatch;
+        if (batch != null) {
+            multiFrameBatch = null;
+            for (Mat frame : batch) frame.release();
+            lblCrackStatus.setText("");
         }
         if (this.capture.isOpened()) {
             this.capture.release();
         }
-        if (this.writer != null && this.writer.isOpened()) {
-            this.writer.release();
+        if (this.y4mInput != null) {
+            try {
+                this.y4mInput.close();
+            } catch (IOException e) {
+                // Lecture seule : rien à perdre
+            }
+            this.y4mInput = null;
+        }
+        if (this.recorder != null) {
+            this.recorder.close();
+            System.out.println("Recording: " + recorder.getWrittenFrames() + " frames written, "
+                    + recorder.getDroppedFrames() + " dropped by the encoder queue");
+            this.recorder = null;
         }
+        metrics.detach();
+        System.out.println("Frame pool: " + framePool);
+        framePool.clear();
         this.cameraActive = false;
     }
 
-    public void setClosed() {
-        this.stopAcquisition();
+    /**
+     * Arrête l'export des mesures : dernière ligne CSV et résumé dans la console
+     * (avant que la chaîne et l'enregistrement ne soient détachés).
+     */
+    private void stopMetricsTimer() {
+        if (metricsTimer == null) return;
+        metricsTimer.shutdownNow();
+        metricsTimer = null;
+        processedDisplay.setOverlay(null);
+        try {
+            metrics.appendCsv(metricsFile);
+            System.out.println("Metrics written to " + metricsFile);
+        } catch (IOException e) {
+            System.err.println("Could not write metrics to " + metricsFile + ": " + e.getMessage());
+        }
+        for (String line : metrics.getSummary()) {
+            System.out.println(line);
+        }
     }
 
-    private void updateImageView(ImageView view, Image image) {
-        onFXThread(view.imageProperty(), image);
+    public void setClosed() {
+        this.stopAcquisition();
+        this.crackService.shutdown();
+        this.metrics.unregisterMBean();
     }
 
     public static <T> void onFXThread(final ObjectProperty<T> property, final T value) {
@@ -0,0 +1,183 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Format YUV4MPEG2 (.y4m) : un en-tête texte, puis pour chaque frame une ligne "FRAME" suivie des
+ * plans Y, U et V bruts. Aucun codec : le chiffrement ne fait que déplacer des lignes, il peut donc
+ * travailler directement sur les octets du fichier (voir {@link Y4mReader} et {@link Y4mWriter}).
+ */
+public final class Y4m {
+
+    static final String SIGNATURE = "YUV4MPEG2";
+    static final String FRAME_MARKER = "FRAME";
+    // Extension de l'en-tête donnant la plage des valeurs YUV (FULL : 0-255, LIMITED : 16-235)
+    static final String COLOR_RANGE_TAG = "XCOLORRANGE=";
+    // Plage produite par les conversions OpenCV COLOR_BGR2YUV / COLOR_YUV2BGR
+    static final String FULL_RANGE = "FULL";
+
+    /**
+     * Sous-échantillonnage de la chrominance.
+     */
+    public enum Chroma {
+        /** Luminance seule. */
+        MONO("mono"),
+        /** Chrominance divisée par 2 dans les deux directions (plans U et V de H/2 lignes). */
+        C420("420jpeg"),
+        /** Chrominance complète : les trois plans ont H lignes. */
+        C444("444");
+
+        private final String tag;
+
+        Chroma(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return Valeur du paramètre C de l'en-tête.
+         */
+        public String tag() {
+            return tag;
+        }
+
+        /**
+         * @return true si chaque plan a autant de lignes que l'image : une permutation de lignes
+         *         s'applique alors plan par plan, directement sur les octets.
+         */
+        public boolean fullHeightPlanes() {
+            return this != C420;
+        }
+
+        /**
+         * @return Taille en octets d'une frame (tous plans).
+         */
+        public long frameBytes(int width, int height) {
+            long luma = (long) width * height;
+            switch (this) {
+                case MONO: return luma;
+                case C420: return luma + 2L * ((width + 1) / 2) * ((height + 1) / 2);
+                default:   return 3 * luma;
+            }
+        }
+
+        /**
+         * Interprète le paramètre C de l'en-tête (420jpeg par défaut, selon la spécification).
+         */
+        static Chroma fromTag(String tag) {
+            if (tag == null || tag.startsWith("420")) return C420;
+            if (tag.equals("444")) return C444;
+            if (tag.equals("mono")) return MONO;
+            throw new IllegalArgumentException("Unsupported Y4M chroma: " + tag);
+        }
+    }
+
+    private Y4m() {
+    }
+
+    /**
+     * Enveloppe les plans d'une frame en Mat 8 bits à un canal, sans copie
+     * (plans empilés verticalement : H lignes par plan complet, disposition I420 pour C420).
+     *
+     * @param planes Octets de la frame (tampon direct, par exemple mappé en mémoire).
+     */
+    static Mat wrapPlanes(ByteBuffer planes, Chroma chroma, int width, int height) {
+        int rows;
+        switch (chroma) {
+            case MONO: rows = height; break;
+            case C420: rows = height * 3 / 2; break;
+            default:   rows = 3 * height;
+        }
+        return new Mat(rows, width, CvType.CV_8UC1, planes);
+    }
+
+    /**
+     * Convertit les plans d'une frame en image BGR (YUV en plage complète, {@value #FULL_RANGE}).
+     *
+     * @param planes Plans enveloppés par {@link #wrapPlanes}.
+     * @param yuv Mat de travail (YUV entrelacé, frames C444 uniquement).
+     * @param bgr Image de destination.
+     */
+    static void toBgr(Mat planes, Chroma chroma, int height, Mat yuv, Mat bgr) {
+        switch (chroma) {
+            case MONO:
+                Imgproc.cvtColor(planes, bgr, Imgproc.COLOR_GRAY2BGR);
+                break;
+            case C420:
+                Imgproc.cvtColor(planes, bgr, Imgproc.COLOR_YUV2BGR_I420);
+                break;
+            default:
+                Core.merge(Arrays.asList(planes.rowRange(0, height), planes.rowRange(height, 2 * height),
+                        planes.rowRange(2 * height, 3 * height)), yuv);
+                Imgproc.cvtColor(yuv, bgr, Imgproc.COLOR_YUV2BGR);
+        }
+    }
+
+    /**
+     * Écrit une image BGR dans les plans d'une frame MONO ou C444 (écriture directe dans le tampon),
+     * en plage complète : le fichier doit porter {@value #COLOR_RANGE_TAG}{@value #FULL_RANGE}.
+     *
+     * @param bgr Image source.
+     * @param yuv Mat de travail (YUV entrelacé).
+     * @param planes Plans enveloppés par {@link #wrapPlanes}.
+     */
+    static void fromBgr(Mat bgr, Chroma chroma, int height, Mat yuv, Mat planes) {
+        if (chroma == Chroma.MONO) {
+            // Mat de même taille et de même type : cvtColor écrit directement dans le tampon
+            Imgproc.cvtColor(bgr, planes, Imgproc.COLOR_BGR2GRAY);
+            return;
+        }
+        if (chroma != Chroma.C444) {
+            throw new IllegalArgumentException("Only mono and 444 Y4M output is supported");
+        }
+        Imgproc.cvtColor(bgr, yuv, Imgproc.COLOR_BGR2YUV);
+        for (int c = 0; c < 3; c++) {
+            Core.extractChannel(yuv, planes.rowRange(c * height, (c + 1) * height), c);
+        }
+    }
+
+    /**
+     * Positions des trois octets qui portent la clé cachée dans une frame : premier octet de chaque
+     * plan (Y, U, V), ou trois premiers octets de la luminance pour une frame MONO.
+     * Les octets sont écrits directement dans les plans : aucune conversion de couleur ne les arrondit.
+     */
+    private static int[] keyOffsets(Chroma chroma, int width, int height) {
+        if (chroma == Chroma.MONO) return new int[]{0, 1, 2};
+        int luma = width * height;
+        int chromaPlane = (int) ((chroma.frameBytes(width, height) - luma) / 2);
+        return new int[]{0, luma, luma + chromaPlane};
+    }
+
+    /**
+     * Cache la clé dans les plans d'une frame (même découpage en 5 bits que
+     * {@link VideoScrambler#embedKeyInPlace}, les plans Y, U, V tenant lieu des canaux B, G, R).
+     *
+     * @param planes Octets de la frame, modifiés directement.
+     */
+    static void embedKey(ByteBuffer planes, Chroma chroma, int width, int height, int r, int s) {
+        int[] offsets = keyOffsets(chroma, width, height);
+        int[] bits = VideoScrambler.keyBits(r, s);
+        for (int c = 0; c < 3; c++) {
+            planes.put(offsets[c], (byte) ((planes.get(offsets[c]) & 0xE0) | bits[c]));
+        }
+    }
+
+    /**
+     * Extrait la clé cachée dans les plans d'une frame par {@link #embedKey}.
+     *
+     * @return Un tableau {r, s}.
+     */
+    static int[] extractKey(ByteBuffer planes, Chroma chroma, int width, int height) {
+        int[] offsets = keyOffsets(chroma, width, height);
+        return VideoScrambler.keyFromBits(planes.get(offsets[0]), planes.get(offsets[1]), planes.get(offsets[2]));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Chiffrement, déchiffrement ou changement de clé d'un fichier Y4M vers un autre fichier Y4M, sans décodage :
+ * les lignes de chaque plan sont recopiées directement de la projection du fichier d'entrée
+ * vers celle du fichier de sortie ({@link VideoScrambler#processPlanes}). Seules les frames
+ * dont chaque plan a toutes les lignes de l'image (MONO, C444) se traitent ainsi.
+ * Les frames sont traitées par lots, en parallèle ; le débit est alors limité par le disque.
+ */
+public class Y4mProcessor {
+
+    /**
+     * Traitement d'une frame, appelé en parallèle depuis le pool.
+     */
+    @FunctionalInterface
+    private interface FrameOperation {
+        void apply(ByteBuffer input, ByteBuffer output, long frameIndex);
+    }
+
+    // Frames d'un lot par thread de traitement
+    private static final int FRAMES_PER_WORKER = 4;
+
+    private final Y4mReader reader;
+    private final Y4mWriter writer;
+    private final int workers;
+    // Clé de sortie changée toutes les N frames (chiffrement et changement de clé), null si fixe
+    private KeyRotation keyRotation;
+
+    /**
+     * @param reader Fichier d'entrée.
+     * @param writer Fichier de sortie, de même taille et même format que l'entrée.
+     * @param workers Nombre de threads de traitement.
+     */
+    public Y4mProcessor(Y4mReader reader, Y4mWriter writer, int workers) {
+        if (!reader.getChroma().fullHeightPlanes() || reader.getChroma() != writer.getChroma()
+                || reader.getWidth() != writer.getWidth() || reader.getHeight() != writer.getHeight()) {
+            throw new IllegalArgumentException("Direct Y4M processing needs identical mono or 444 input and output");
+        }
+        this.reader = reader;
+        this.writer = writer;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Fait tourner la clé de sortie (chiffrement et changement de clé) : la clé donnée est alors
+     * ignorée au profit de celle de la rotation, cachée dans chaque frame.
+     *
+     * @param keyRotation Rotation des clés, ou null pour une clé fixe.
+     */
+    public void setKeyRotation(KeyRotation keyRotation) {
+        this.keyRotation = keyRotation;
+    }
+
+    /**
+     * Traite toutes les frames restantes du fichier d'entrée.
+     *
+     * @param r Clé R (à défaut de clé cachée ou de chronologie).
+     * @param s Clé S.
+     * @param unscrambleMode Si true, déchiffre.
+     * @param stego Chiffrement : cache la clé dans chaque frame / déchiffrement : lit la clé cachée.
+     * @param timeline Chronologie des clés pour le déchiffrement (null si absente).
+     * @return Nombre de frames traitées.
+     * @throws IOException En cas d'erreur de lecture ou d'écriture.
+     */
+    public long process(int r, int s, boolean unscrambleMode, boolean stego, KeyTimeline timeline)
+            throws IOException {
+        return run((input, output, frameIndex) ->
+                processFrame(input, output, frameIndex, r, s, unscrambleMode, stego, timeline));
+    }
+
+    /**
+     * Change la clé de toutes les frames restantes, en une seule copie par frame
+     * ({@link VideoScrambler#rekeyPlanes}).
+     *
+     * @param r1 Ancienne clé R (à défaut de clé cachée ou de chronologie).
+     * @param s1 Ancienne clé S.
+     * @param r2 Nouvelle clé R.
+     * @param s2 Nouvelle clé S.
+     * @param stego Lit l'ancienne clé cachée dans chaque frame et cache la nouvelle à sa place.
+     * @param timeline Chronologie des anciennes clés (null si absente).
+     * @return Nombre de frames traitées.
+     * @throws IOException En cas d'erreur de lecture ou d'écriture.
+     */
+    public long rekey(int r1, int s1, int r2, int s2, boolean stego, KeyTimeline timeline) throws IOException {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        Y4m.Chroma chroma = reader.getChroma();
+        return run((input, output, frameIndex) -> {
+            int[] oldKey = sourceKey(input, frameIndex, r1, s1, stego, timeline);
+            int[] newKey = (keyRotation != null) ? keyRotation.keyFor(frameIndex) : new int[]{r2, s2};
+            VideoScrambler.rekeyPlanes(input, output, width, height, planeCount(),
+                    oldKey[0], oldKey[1], newKey[0], newKey[1]);
+            if (stego) {
+                Y4m.embedKey(output, chroma, width, height, newKey[0], newKey[1]);
+            }
+        });
+    }
+
+    private long run(FrameOperation operation) throws IOException {
+        int batchSize = FRAMES_PER_WORKER * workers;
+        ByteBuffer[] inputs = new ByteBuffer[batchSize];
+        ByteBuffer[] outputs = new ByteBuffer[batchSize];
+        long firstIndex = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            while (true) {
+                // Lecture et réservation séquentielles (projections), traitement parallèle
+                int count = 0;
+                ByteBuffer planes;
+                while (count < batchSize && (planes = reader.nextFrame()) != null) {
+                    inputs[count] = planes;
+                    outputs[count] = writer.nextFrame();
+                    count++;
+                }
+                if (count == 0) break;
+
+                long batchStart = firstIndex;
+                int batchCount = count;
+                pool.submit(() -> IntStream.range(0, batchCount).parallel().forEach(i ->
+                        operation.apply(inputs[i], outputs[i], batchStart + i)
+                )).get();
+                firstIndex += count;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("Frame processing failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return firstIndex;
+    }
+
+    private void processFrame(ByteBuffer input, ByteBuffer output, long frameIndex,
+                              int r, int s, boolean unscrambleMode, boolean stego, KeyTimeline timeline) {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+
+        if (unscrambleMode || keyRotation != null) {
+            int[] key = unscrambleMode ? sourceKey(input, frameIndex, r, s, stego, timeline)
+                    : keyRotation.keyFor(frameIndex);
+            r = key[0];
+            s = key[1];
+        }
+
+        VideoScrambler.processPlanes(input, output, width, height, planeCount(), r, s, unscrambleMode);
+
+        if (stego && !unscrambleMode) {
+            Y4m.embedKey(output, reader.getChroma(), width, height, r, s);
+        }
+    }
+
+    /**
+     * Clé avec laquelle une frame d'entrée a été chiffrée : clé cachée, chronologie ou clé donnée.
+     */
+    private int[] sourceKey(ByteBuffer input, long frameIndex, int r, int s, boolean stego, KeyTimeline timeline) {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        if (stego) {
+            return Y4m.extractKey(input, reader.getChroma(), width, height);
+        }
+        if (timeline != null) {
+            // Luminance seule pour départager deux plages de la chronologie
+            Mat luma = Y4m.wrapPlanes(input, Y4m.Chroma.MONO, width, height);
+            int[] key = timeline.keyFor(frameIndex, luma);
+            luma.release();
+            if (key != null) return key;
+        }
+        return new int[]{r, s};
+    }
+
+    private int planeCount() {
+        return (reader.getChroma() == Y4m.Chroma.MONO) ? 1 : 3;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lecture d'un fichier Y4M par projection en mémoire ({@link FileChannel#map}).
+ * Le fichier est projeté par fenêtres de frames entières ; chaque frame est rendue comme une
+ * vue sur la projection, sans copie. Une vue reste valide après le passage à la fenêtre suivante.
+ * Un lecteur n'est utilisé que depuis un seul thread.
+ */
+public class Y4mReader implements AutoCloseable {
+
+    // Taille d'une fenêtre de projection (au moins une frame)
+    static final long WINDOW_BYTES = 256L * 1024 * 1024;
+    // Longueur maximale de l'en-tête du fichier et de celui d'une frame
+    private static final int MAX_HEADER_BYTES = 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int width;
+    private final int height;
+    private final Y4m.Chroma chroma;
+    private final double fps;
+    private final String colorRange;
+    private final int frameBytes;
+    private final long firstFrameOffset;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    // Position de la prochaine frame dans le fichier
+    private long position;
+    private long framesRead = 0;
+
+    // Mats de travail de la conversion en BGR
+    private final Mat yuv = new Mat();
+
+    /**
+     * Ouvre le fichier et lit son en-tête.
+     *
+     * @param file Fichier .y4m.
+     * @throws IOException Si le fichier est illisible ou n'est pas un Y4M 8 bits.
+     */
+    public Y4mReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(MAX_HEADER_BYTES, fileSize));
+            channel.read(head, 0);
+            String header = headerLine(head, 0);
+            if (header == null || !header.startsWith(Y4m.SIGNATURE + " ")) {
+                throw new IOException("Not a YUV4MPEG2 file: " + file);
+            }
+
+            int w = 0, h = 0;
+            double rate = 30.0;
+            String chromaTag = null;
+            String range = null;
+            for (String parameter : header.substring(Y4m.SIGNATURE.length() + 1).split(" ")) {
+                if (parameter.isEmpty()) continue;
+                String value = parameter.substring(1);
+                switch (parameter.charAt(0)) {
+                    case 'W': w = Integer.parseInt(value); break;
+                    case 'H': h = Integer.parseInt(value); break;
+                    case 'C': chromaTag = value; break;
+                    case 'F':
+                        String[] ratio = value.split(":");
+                        double denominator = Double.parseDouble(ratio[1]);
+                        if (denominator > 0) rate = Double.parseDouble(ratio[0]) / denominator;
+                        break;
+                    case 'X':
+                        if (parameter.startsWith(Y4m.COLOR_RANGE_TAG)) {
+                            range = parameter.substring(Y4m.COLOR_RANGE_TAG.length());
+                        }
+                        break;
+                    default:
+                        // Entrelacement, rapport d'aspect : sans effet sur les octets
+                }
+            }
+            if (w <= 0 || h <= 0) throw new IOException("Missing frame size in Y4M header: " + file);
+
+            this.width = w;
+            this.height = h;
+            this.fps = rate;
+            this.colorRange = range;
+            try {
+                this.chroma = Y4m.Chroma.fromTag(chromaTag);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            this.frameBytes = Math.toIntExact(chroma.frameBytes(w, h));
+            this.firstFrameOffset = header.length() + 1;
+            this.position = firstFrameOffset;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Renvoie les plans de la frame suivante, sans copie.
+     *
+     * @return Vue (position 0, limite = taille de la frame) sur la projection, ou null en fin de fichier.
+     * @throws IOException Si la frame est tronquée ou mal formée.
+     */
+    public ByteBuffer nextFrame() throws IOException {
+        if (position >= fileSize) return null;
+
+        // La fenêtre doit contenir l'en-tête de la frame et tous ses plans
+        long needed = Math.min(fileSize - position, (long) frameBytes + MAX_HEADER_BYTES);
+        if (window == null || position < windowStart || position + needed > windowStart + window.capacity()) {
+            long length = Math.min(fileSize - position, Math.max(WINDOW_BYTES, needed));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+        }
+
+        int offset = (int) (position - windowStart);
+        String marker = headerLine(window, offset);
+        if (marker == null || !marker.startsWith(Y4m.FRAME_MARKER)) {
+            throw new IOException("Malformed Y4M frame header at byte " + position);
+        }
+        int planesOffset = offset + marker.length() + 1;
+        if (planesOffset + frameBytes > window.capacity()) {
+            throw new IOException("Truncated Y4M frame at byte " + position);
+        }
+
+        position = windowStart + planesOffset + frameBytes;
+        framesRead++;
+        return window.slice(planesOffset, frameBytes);
+    }
+
+    /**
+     * Lit la frame suivante et la convertit en image BGR.
+     *
+     * @param bgr Image de destination (réallouée si besoin).
+     * @param restoreKey Si true, la clé cachée dans les plans ({@link Y4m#extractKey}) est
+     *                   replacée dans le pixel (0,0) de l'image BGR, où {@link VideoScrambler#extractKey} la lit.
+     * @return false en fin de fichier.
+     * @throws IOException Si la frame est tronquée ou mal formée.
+     */
+    public boolean read(Mat bgr, boolean restoreKey) throws IOException {
+        ByteBuffer planes = nextFrame();
+        if (planes == null) return false;
+
+        Mat wrapped = Y4m.wrapPlanes(planes, chroma, width, height);
+        Y4m.toBgr(wrapped, chroma, height, yuv, bgr);
+        wrapped.release();
+        if (restoreKey) {
+            int[] key = Y4m.extractKey(planes, chroma, width, height);
+            VideoScrambler.embedKeyInPlace(bgr, key[0], key[1]);
+        }
+        return true;
+    }
+
+    /**
+     * Lit une ligne d'en-tête (terminée par '\n') à partir d'une position absolue du tampon.
+     *
+     * @return La ligne sans le '\n', ou null si elle n'est pas terminée dans les limites autorisées.
+     */
+    private static String headerLine(ByteBuffer buffer, int offset) {
+        int end = Math.min(buffer.limit(), offset + MAX_HEADER_BYTES);
+        for (int i = offset; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                byte[] line = new byte[i - offset];
+                buffer.get(offset, line);
+                return new String(line, StandardCharsets.US_ASCII);
+            }
+        }
+        return null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Y4m.Chroma getChroma() {
+        return chroma;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * @return Plage des valeurs YUV annoncée par l'en-tête ({@code FULL}, {@code LIMITED}), ou null si absente.
+     */
+    public String getColorRange() {
+        return colorRange;
+    }
+
+    /**
+     * @return Taille des plans d'une frame, en octets.
+     */
+    public int getFrameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * @return Nombre de frames déjà lues.
+     */
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    /**
+     * @return Nombre de frames du fichier, en supposant des en-têtes de frame sans paramètre.
+     */
+    public long estimateFrameCount() {
+        return (fileSize - firstFrameOffset) / (Y4m.FRAME_MARKER.length() + 1 + frameBytes);
+    }
+
+    /**
+     * Ferme le fichier. Les projections sont libérées par le GC.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        yuv.release();
+        channel.close();
+    }
+}
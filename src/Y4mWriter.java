@@ -0,0 +1,172 @@
+/*
+ * Noms    : Boisselot, Vidy
+ * Prénoms : Harry, Enzo
+ * Groupe  : S5-A2
+ */
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Écriture d'un fichier Y4M (MONO ou C444) par projection en mémoire.
+ * Chaque frame est projetée à la suite des données déjà écrites, à sa taille exacte : le fichier
+ * n'est jamais agrandi au-delà des données, et n'a pas à être retronqué à la fermeture (ce que
+ * Windows refuse tant qu'une projection reste ouverte). La frame est une vue sur la projection
+ * dans laquelle on écrit directement (conversion BGR ou permutation des plans).
+ * Un écrivain n'est utilisé que depuis un seul thread ; les vues rendues peuvent en revanche
+ * être remplies en parallèle.
+ */
+public class Y4mWriter implements AutoCloseable {
+
+    private static final byte[] FRAME_HEADER = (Y4m.FRAME_MARKER + "\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final Y4m.Chroma chroma;
+    private final int frameBytes;
+    // En-tête de frame + plans
+    private final long slotBytes;
+
+    // Fin des données écrites dans le fichier
+    private long position;
+    private long framesWritten = 0;
+
+    // Mat de travail de la conversion depuis le BGR
+    private final Mat yuv = new Mat();
+
+    /**
+     * Crée (ou remplace) le fichier et écrit son en-tête, pour des frames converties depuis le BGR
+     * (plage YUV complète).
+     *
+     * @param file Fichier .y4m.
+     * @param width Largeur des frames.
+     * @param height Hauteur des frames.
+     * @param chroma Format des plans (MONO ou C444 : toutes les lignes d'un plan se permutent directement).
+     * @param fps Cadence de la vidéo.
+     * @throws IOException Si le fichier ne peut pas être créé.
+     */
+    public Y4mWriter(Path file, int width, int height, Y4m.Chroma chroma, double fps) throws IOException {
+        this(file, width, height, chroma, fps, Y4m.FULL_RANGE);
+    }
+
+    /**
+     * Crée (ou remplace) le fichier et écrit son en-tête.
+     *
+     * @param file Fichier .y4m.
+     * @param width Largeur des frames.
+     * @param height Hauteur des frames.
+     * @param chroma Format des plans (MONO ou C444 : toutes les lignes d'un plan se permutent directement).
+     * @param fps Cadence de la vidéo.
+     * @param colorRange Plage YUV écrite dans l'en-tête ({@code FULL}, {@code LIMITED}), ou null pour l'omettre
+     *                   (plans recopiés d'un fichier qui ne l'indique pas).
+     * @throws IOException Si le fichier ne peut pas être créé.
+     */
+    public Y4mWriter(Path file, int width, int height, Y4m.Chroma chroma, double fps, String colorRange)
+            throws IOException {
+        if (!chroma.fullHeightPlanes()) {
+            throw new IllegalArgumentException("Only mono and 444 Y4M output is supported");
+        }
+        this.width = width;
+        this.height = height;
+        this.chroma = chroma;
+        this.frameBytes = Math.toIntExact(chroma.frameBytes(width, height));
+        this.slotBytes = FRAME_HEADER.length + (long) frameBytes;
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            // Cadence exprimée en fraction exacte pour les valeurs entières, au millième sinon
+            String rate = (fps == Math.rint(fps))
+                    ? String.format(Locale.ROOT, "%d:1", (long) fps)
+                    : String.format(Locale.ROOT, "%d:1000", Math.round(fps * 1000));
+            String range = (colorRange != null) ? " " + Y4m.COLOR_RANGE_TAG + colorRange : "";
+            String header = String.format(Locale.ROOT, "%s W%d H%d F%s Ip A1:1 C%s%s\n",
+                    Y4m.SIGNATURE, width, height, rate, chroma.tag(), range);
+            ByteBuffer bytes = ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, position + bytes.position());
+            }
+            position = bytes.limit();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Réserve la frame suivante dans le fichier (le fichier grandit d'exactement une frame).
+     *
+     * @return Vue (position 0, limite = taille de la frame) sur les plans à remplir.
+     * @throws IOException Si le fichier ne peut pas être agrandi.
+     */
+    public ByteBuffer nextFrame() throws IOException {
+        MappedByteBuffer slot = channel.map(FileChannel.MapMode.READ_WRITE, position, slotBytes);
+        slot.put(0, FRAME_HEADER);
+        position += slotBytes;
+        framesWritten++;
+        return slot.slice(FRAME_HEADER.length, frameBytes);
+    }
+
+    /**
+     * Convertit une image BGR et l'ajoute au fichier.
+     *
+     * @param bgr Image de la taille du fichier.
+     * @param carryKey Si true, la clé cachée dans le pixel (0,0) ({@link VideoScrambler#embedKeyInPlace})
+     *                 est recopiée telle quelle dans les plans, sans l'arrondi de la conversion de couleur.
+     * @throws IOException Si le fichier ne peut pas être agrandi.
+     */
+    public void write(Mat bgr, boolean carryKey) throws IOException {
+        ByteBuffer planes = nextFrame();
+        Mat wrapped = Y4m.wrapPlanes(planes, chroma, width, height);
+        Y4m.fromBgr(bgr, chroma, height, yuv, wrapped);
+        wrapped.release();
+        if (carryKey) {
+            int[] key = VideoScrambler.extractKey(bgr);
+            Y4m.embedKey(planes, chroma, width, height, key[0], key[1]);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Y4m.Chroma getChroma() {
+        return chroma;
+    }
+
+    /**
+     * @return Nombre de frames écrites.
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * @return Taille du fichier une fois fermé, en octets.
+     */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    /**
+     * Ferme le fichier (déjà à la taille des données écrites).
+     */
+    @Override
+    public void close() throws IOException {
+        yuv.release();
+        channel.close();
+    }
+}